@@ -0,0 +1,319 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.gcs;
+
+import com.google.cloud.ReadChannel;
+import com.google.common.io.ByteStreams;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.embulk.config.ConfigException;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+
+/**
+ * Chooses the chunk size of ReadChannel, which is the size of each GET request made while downloading an object.
+ *
+ * The size is tuned by AIMD while reading: it grows by a fixed step after each chunk read at least as fast as the recent
+ * chunks, and it is halved when a chunk takes longer than max_chunk_latency_millis, when the throughput drops, or
+ * when the read fails. The size is kept across the objects read by a task, so that later objects start from what
+ * was learned from the earlier ones.
+ *
+ * The buffer of each chunk is reserved from MemoryGovernor, and a chunk is downloaded by a small request when the memory
+ * is not available.
+ *
+ * An instance is used by a single task, and it is not thread-safe.
+ */
+class AdaptiveChunkSize {
+    interface Task {
+        @Config("adaptive_chunk_size")
+        @ConfigDefault("false")
+        boolean getAdaptiveChunkSize();
+
+        @Config("initial_chunk_size")
+        @ConfigDefault("2097152") // default chunk size of ReadChannel
+        int getInitialChunkSize();
+
+        @Config("min_chunk_size")
+        @ConfigDefault("262144")
+        int getMinChunkSize();
+
+        @Config("max_chunk_size")
+        @ConfigDefault("67108864")
+        int getMaxChunkSize();
+
+        @Config("max_chunk_latency_millis")
+        @ConfigDefault("10000")
+        long getMaxChunkLatencyMillis();
+    }
+
+    private static final int STEP = 1024 * 1024;
+    // a chunk slower than this ratio of the average throughput is taken as congestion
+    private static final double SLOWDOWN = 0.7;
+    private static final double SMOOTHING = 0.2;
+    // the chunk size used without reserving the memory
+    static final int STREAMING_CHUNK_SIZE = 256 * 1024;
+
+    private final boolean enabled;
+    private final int min;
+    private final int max;
+    private final long maxLatencyNanos;
+    private final MemoryGovernor governor;
+    private int size;
+    private double averageThroughput = 0;
+
+    private long chunks = 0;
+    private long bytes = 0;
+    private long nanos = 0;
+    private int minChosen;
+    private int maxChosen;
+
+    AdaptiveChunkSize(final boolean enabled, final int initial, final int min, final int max, final long maxLatencyMillis) {
+        this(enabled, initial, min, max, maxLatencyMillis, MemoryGovernor.global());
+    }
+
+    AdaptiveChunkSize(final boolean enabled, final int initial, final int min, final int max, final long maxLatencyMillis,
+            final MemoryGovernor governor) {
+        if (min <= 0 || min > max) {
+            throw new ConfigException(String.format("min_chunk_size must be positive and not greater than max_chunk_size, but %d and %d", min, max));
+        }
+        this.enabled = enabled;
+        this.min = min;
+        this.max = max;
+        this.maxLatencyNanos = maxLatencyMillis * 1_000_000L;
+        this.governor = governor;
+        this.size = enabled ? Math.max(min, Math.min(max, initial)) : initial;
+        this.minChosen = size;
+        this.maxChosen = size;
+    }
+
+    static AdaptiveChunkSize of(final Task task) {
+        return of(task, MemoryGovernor.global());
+    }
+
+    static AdaptiveChunkSize of(final Task task, final MemoryGovernor governor) {
+        return new AdaptiveChunkSize(task.getAdaptiveChunkSize(), task.getInitialChunkSize(), task.getMinChunkSize(),
+                task.getMaxChunkSize(), task.getMaxChunkLatencyMillis(), governor);
+    }
+
+    static AdaptiveChunkSize fixed(final int size) {
+        return new AdaptiveChunkSize(false, size, size, size, Long.MAX_VALUE / 1_000_000L);
+    }
+
+    int getChunkSize() {
+        return size;
+    }
+
+    /**
+     * Wraps {@code channel} of the object {@code name} to measure each chunk, and sets the chunk size to it.
+     * The buffer of the chunk is reserved until the returned channel is closed.
+     *
+     * The channel must be positioned at the beginning of a chunk, that is, just opened or sought.
+     * {@code openNanos} is when the object began to be opened, to measure the time to the first byte.
+     */
+    ReadableByteChannel wrap(final ReadChannel channel, final String name, final long openNanos) {
+        return new MeasuredChannel(channel, name, openNanos);
+    }
+
+    /**
+     * Reads up to {@code length} bytes from the current position of {@code channel}, by a single ranged GET if they
+     * fit in the chunk size. A larger sample is read by requests of the chunk size, and the returned stream ends at
+     * {@code length}. The buffer of the requests is reserved until the returned stream is closed, and the bytes are
+     * read by small requests instead if the memory is not available.
+     */
+    InputStream sample(final ReadChannel channel, final long length) {
+        final int wanted = (int) Math.max(Math.min(length, size), 1);
+        final boolean reserved = governor.tryReserve(wanted);
+        channel.setChunkSize(reserved ? wanted : Math.min(wanted, STREAMING_CHUNK_SIZE));
+        final InputStream in = ByteStreams.limit(Channels.newInputStream(channel), Math.max(length, 0));
+        return reserved ? new ReservedInputStream(in, wanted) : in;
+    }
+
+    /**
+     * Adapts the chunk size to a chunk of {@code chunkBytes} read in {@code chunkNanos}.
+     */
+    void onChunk(final long chunkBytes, final long chunkNanos) {
+        chunks++;
+        bytes += chunkBytes;
+        nanos += chunkNanos;
+        if (!enabled) {
+            return;
+        }
+        final double throughput = (double) chunkBytes / Math.max(chunkNanos, 1);
+        if (chunkNanos > maxLatencyNanos || (averageThroughput > 0 && throughput < averageThroughput * SLOWDOWN)) {
+            decrease();
+        } else {
+            setSize((int) Math.min((long) size + STEP, max));
+        }
+        averageThroughput = averageThroughput == 0 ? throughput : averageThroughput * (1 - SMOOTHING) + throughput * SMOOTHING;
+    }
+
+    /**
+     * Halves the chunk size after a read failed.
+     */
+    void onFailure() {
+        if (enabled) {
+            decrease();
+        }
+    }
+
+    /**
+     * Returns the chunk sizes chosen so far and the measured throughput, to be reported in TaskReport.
+     */
+    Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("chunks", chunks);
+        metrics.put("bytes", bytes);
+        metrics.put("min_chunk_size", minChosen);
+        metrics.put("max_chunk_size", maxChosen);
+        metrics.put("last_chunk_size", size);
+        metrics.put("bytes_per_second", nanos == 0 ? 0 : (long) (bytes * 1e9 / nanos));
+        return metrics;
+    }
+
+    private void decrease() {
+        setSize(Math.max(min, size / 2));
+    }
+
+    private void setSize(final int newSize) {
+        size = newSize;
+        minChosen = Math.min(minChosen, size);
+        maxChosen = Math.max(maxChosen, size);
+    }
+
+    /**
+     * Counts the bytes and the time spent in read calls of each chunk. ReadChannel doesn't return bytes across
+     * a chunk boundary in a single read call, and it requests the next chunk by the chunk size set at the time,
+     * so a new size can be applied when the bytes of the current chunk are all read.
+     */
+    private class MeasuredChannel implements ReadableByteChannel {
+        private final ReadChannel channel;
+        private final String name;
+        private final long openNanos;
+        private boolean firstByte = true;
+        private int reserved = 0;
+        private int chunkSize;
+        private long chunkBytes = 0;
+        private long chunkNanos = 0;
+
+        MeasuredChannel(final ReadChannel channel, final String name, final long openNanos) {
+            this.channel = channel;
+            this.name = name;
+            this.openNanos = openNanos;
+            this.chunkSize = reserve(size);
+            channel.setChunkSize(chunkSize);
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            final long start = System.nanoTime();
+            final int n;
+            try {
+                n = channel.read(dst);
+            } catch (final IOException | RuntimeException ex) {
+                onFailure();
+                throw ex;
+            }
+            if (n > 0) {
+                final long end = System.nanoTime();
+                if (firstByte) {
+                    firstByte = false;
+                    Tracing.open(name, end - openNanos);
+                }
+                chunkBytes += n;
+                chunkNanos += end - start;
+                if (chunkBytes >= chunkSize) {
+                    Tracing.chunk(name, chunkBytes, chunkNanos, chunkSize);
+                    onChunk(chunkBytes, chunkNanos);
+                    chunkBytes = 0;
+                    chunkNanos = 0;
+                    if (reserved != size) {
+                        final int next = reserve(size);
+                        if (next != chunkSize) {
+                            chunkSize = next;
+                            channel.setChunkSize(next);
+                        }
+                    }
+                }
+            } else if (n < 0 && chunkBytes > 0) {
+                // the last chunk of the object is usually short, so it is counted but not used to adapt
+                Tracing.chunk(name, chunkBytes, chunkNanos, chunkSize);
+                chunks++;
+                bytes += chunkBytes;
+                nanos += chunkNanos;
+                chunkBytes = 0;
+                chunkNanos = 0;
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            governor.release(reserved);
+            reserved = 0;
+            channel.close();
+        }
+
+        /**
+         * Reserves the buffer of the next chunk of {@code wanted} bytes, and returns the chunk size to use, which is
+         * a small one without reserving if the memory is not available.
+         */
+        private int reserve(final int wanted) {
+            if (wanted <= reserved) {
+                governor.release(reserved - wanted);
+                reserved = wanted;
+                return wanted;
+            }
+            if (governor.tryReserve(wanted - reserved)) {
+                reserved = wanted;
+                return wanted;
+            }
+            governor.release(reserved);
+            reserved = 0;
+            return Math.min(wanted, STREAMING_CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Releases the reserved buffer of a sample when it is closed.
+     */
+    private class ReservedInputStream extends FilterInputStream {
+        private int reserved;
+
+        ReservedInputStream(final InputStream in, final int reserved) {
+            super(in);
+            this.reserved = reserved;
+        }
+
+        @Override
+        public void close() throws IOException {
+            governor.release(reserved);
+            reserved = 0;
+            super.close();
+        }
+    }
+}
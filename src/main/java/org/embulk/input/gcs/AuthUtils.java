@@ -16,25 +16,35 @@
 
 package org.embulk.input.gcs;
 
+import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.util.SecurityUtils;
 import com.google.api.services.storage.StorageScopes;
 import com.google.auth.Credentials;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
 import com.google.auth.oauth2.ServiceAccountCredentials;
+import com.google.cloud.http.HttpTransportOptions;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageException;
 import com.google.cloud.storage.StorageOptions;
+import com.google.common.hash.Hashing;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.Optional;
 import org.embulk.config.ConfigException;
 import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
 import org.embulk.util.config.units.LocalFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 class AuthUtils {
     public enum AuthMethod {
@@ -64,14 +74,74 @@ class AuthUtils {
         @Config("json_keyfile")
         @ConfigDefault("null")
         Optional<LocalFile> getJsonKeyfile();
+
+        @Config("share_access_token")
+        @ConfigDefault("false")
+        boolean getShareAccessToken();
+
+        // task-only, set by the transaction, so that the token is neither read from the config nor written to the ConfigDiff
+        Optional<String> getSharedAccessToken();
+
+        void setSharedAccessToken(Optional<String> sharedAccessToken);
+
+        Optional<Long> getSharedAccessTokenExpiration();
+
+        void setSharedAccessTokenExpiration(Optional<Long> sharedAccessTokenExpiration);
+
+        @Config("refresh_token_in_background")
+        @ConfigDefault("false")
+        boolean getRefreshTokenInBackground();
+
+        // such as "http://localhost:4443" of an emulator, instead of Google Cloud Storage
+        @Config("endpoint")
+        @ConfigDefault("null")
+        Optional<String> getEndpoint();
     }
 
+    private static final Logger LOG = LoggerFactory.getLogger(AuthUtils.class);
+
+    // a shared token expiring sooner than this is not used, and a task gets its own token by its key instead
+    private static final long SHARED_ACCESS_TOKEN_MARGIN_MILLIS = 5 * 60 * 1000;
+
     private AuthUtils() {
     }
 
+    /**
+     * Returns a client after verifying the credentials and the buckets by listing an object of each bucket.
+     *
+     * It is called once in the transaction, so that tasks don't repeat the verification.
+     */
     static Storage newClient(final PluginTask task) {
+        final Storage client = newUncheckedClient(task);
+        try {
+            for (String bucket : new LinkedHashSet<>(GcsFileInput.getBuckets(task))) {
+                client.list(bucket, Storage.BlobListOption.pageSize(1));
+            }
+        } catch (final StorageException e) {
+            throw new ConfigException(e);
+        }
+        return client;
+    }
+
+    /**
+     * Returns a client without any request, whose credentials are verified by the first request.
+     */
+    static Storage newUncheckedClient(final PluginTask task) {
         try {
             final StorageOptions.Builder builder = StorageOptions.newBuilder();
+            task.getEndpoint().ifPresent(builder::setHost);
+            if (task.getAdaptiveConcurrency()) {
+                final ConcurrencyLimiter limiter = ConcurrencyLimiter.of(task);
+                builder.setTransportOptions(HttpTransportOptions.newBuilder().setHttpTransportFactory(() -> limiter.wrap(new NetHttpTransport())).build());
+            }
+            if (task.getRefreshTokenInBackground()) {
+                builder.setCredentials(RefreshingCredentials.of(getKeyId(task), () -> fromKey(task), getSharedAccessToken(task)));
+                return builder.build().getService();
+            }
+            if (task.getShareAccessToken() && task.getSharedAccessToken().isPresent()) {
+                builder.setCredentials(fromSharedAccessToken(task));
+                return builder.build().getService();
+            }
             switch (task.getAuthMethod()) {
                 case json_key:
                     builder.setCredentials(fromJson(task));
@@ -83,11 +153,8 @@ class AuthUtils {
                     // compute_engine does not need credentials
                     break;
             }
-            // test client to verify auth
-            final Storage client = builder.build().getService();
-            client.list(task.getBucket(), Storage.BlobListOption.pageSize(1));
-            return client;
-        } catch (final StorageException | IOException | GeneralSecurityException e) {
+            return builder.build().getService();
+        } catch (final IOException | GeneralSecurityException e) {
             throw new ConfigException(e);
         }
     }
@@ -113,4 +180,95 @@ class AuthUtils {
         final InputStream jsonStream = new FileInputStream(path);
         return ServiceAccountCredentials.fromStream(jsonStream);
     }
+
+    /**
+     * Gets an access token by the key, and sets it to {@code task} so that tasks use it instead of getting their own tokens.
+     */
+    static void shareAccessToken(final Task task) {
+        try {
+            final GoogleCredentials credentials = fromKey(task);
+            credentials.refresh();
+            final AccessToken token = credentials.getAccessToken();
+            task.setSharedAccessToken(Optional.of(token.getTokenValue()));
+            task.setSharedAccessTokenExpiration(Optional.ofNullable(token.getExpirationTime()).map(Date::getTime));
+        } catch (final IOException | GeneralSecurityException e) {
+            throw new ConfigException(e);
+        }
+    }
+
+    /**
+     * Returns the credentials of the shared access token, which fall back to the key to get a new token once it is about to expire.
+     */
+    static Credentials fromSharedAccessToken(final Task task) {
+        return new SharedAccessTokenCredentials(getSharedAccessToken(task).orElse(null), task);
+    }
+
+    // returns the shared access token unless it is about to expire
+    private static Optional<AccessToken> getSharedAccessToken(final Task task) {
+        if (!task.getShareAccessToken() || !task.getSharedAccessToken().isPresent()) {
+            return Optional.empty();
+        }
+        final Optional<Long> expiration = task.getSharedAccessTokenExpiration();
+        if (expiration.isPresent() && expiration.get() - System.currentTimeMillis() < SHARED_ACCESS_TOKEN_MARGIN_MILLIS) {
+            LOG.info("The shared access token is about to expire, getting another access token by the key");
+            return Optional.empty();
+        }
+        return Optional.of(new AccessToken(task.getSharedAccessToken().get(), expiration.map(Date::new).orElse(null)));
+    }
+
+    // identifies the key by its content, because each task may have its own copy of the key file
+    private static String getKeyId(final Task task) throws IOException {
+        switch (task.getAuthMethod()) {
+            case json_key:
+                return "json_key:" + Hashing.sha256().hashBytes(Files.readAllBytes(task.getJsonKeyfile().get().getPath()));
+            case private_key:
+                return "private_key:" + task.getServiceAccountEmail().orElse("") + ":"
+                        + Hashing.sha256().hashBytes(Files.readAllBytes(task.getP12Keyfile().get().getPath()));
+            default:
+                return task.getAuthMethod().name();
+        }
+    }
+
+    private static GoogleCredentials fromKey(final Task task) throws IOException, GeneralSecurityException {
+        final GoogleCredentials credentials;
+        switch (task.getAuthMethod()) {
+            case json_key:
+                credentials = (GoogleCredentials) fromJson(task);
+                break;
+            case private_key:
+                credentials = (GoogleCredentials) fromP12(task);
+                break;
+            default:
+                credentials = GoogleCredentials.getApplicationDefault();
+                break;
+        }
+        if (credentials.createScopedRequired()) {
+            return credentials.createScoped(Collections.singletonList(StorageScopes.DEVSTORAGE_READ_ONLY));
+        }
+        return credentials;
+    }
+
+    private static class SharedAccessTokenCredentials extends GoogleCredentials {
+        private final Task task;
+        private GoogleCredentials key;
+
+        SharedAccessTokenCredentials(final AccessToken accessToken, final Task task) {
+            super(accessToken);
+            this.task = task;
+        }
+
+        @Override
+        public AccessToken refreshAccessToken() throws IOException {
+            // the shared token has expired, and this task gets its own tokens by the key from now on
+            if (key == null) {
+                try {
+                    key = fromKey(task);
+                } catch (final GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+            }
+            key.refresh();
+            return key.getAccessToken();
+        }
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.gcs;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+
+/**
+ * Passes the bytes of an object through, and validates them against the CRC32C recorded while listing.
+ *
+ * The checksum is computed on a helper thread, so the reading thread only copies the bytes it has read.
+ * The copies are handed over through a bounded queue, which blocks the reading thread if the helper falls behind.
+ * The copies are reserved from MemoryGovernor, and the reading thread computes the checksum by itself instead of
+ * copying when the memory is not available.
+ * A mismatch fails the read at the end of the object, so that the task fails and can be resumed alone. The object is not
+ * reopened by InputStreamReopener then, unlike a failed read, since its bytes have already been passed to the parser.
+ */
+class ChecksumInputStream extends FilterInputStream {
+    interface Task {
+        @Config("validate_checksum")
+        @ConfigDefault("false")
+        boolean getValidateChecksum();
+    }
+
+    private static final int QUEUE_CAPACITY = 64;
+    private static final byte[] END = new byte[0];
+
+    private final String name;
+    private final int expected;
+    private final MemoryGovernor governor;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final CompletableFuture<Integer> actual = new CompletableFuture<>();
+    // used by the helper thread, or by the reading thread while no copy is pending
+    private final Hasher hasher = Hashing.crc32c().newHasher();
+    private final Object lock = new Object();
+    private int pending = 0;
+    private boolean ended = false;
+
+    ChecksumInputStream(final InputStream in, final Executor helper, final String name, final int expected) {
+        this(in, helper, name, expected, MemoryGovernor.global());
+    }
+
+    ChecksumInputStream(final InputStream in, final Executor helper, final String name, final int expected, final MemoryGovernor governor) {
+        super(in);
+        this.name = name;
+        this.expected = expected;
+        this.governor = governor;
+        helper.execute(this::digest);
+    }
+
+    /**
+     * Decodes CRC32C of the object metadata, which is a base64-encoded big-endian integer.
+     */
+    static int decodeCrc32c(final String crc32c) {
+        return ByteBuffer.wrap(Base64.getDecoder().decode(crc32c)).getInt();
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b < 0) {
+            validate();
+        } else {
+            update(new byte[] {(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n = super.read(b, off, len);
+        if (n < 0) {
+            validate();
+        } else if (n > 0) {
+            update(b, off, n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // skipped bytes are read anyway to compute the checksum
+        final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int r = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+            if (r < 0) {
+                break;
+            }
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!ended) {
+            ended = true;
+            final List<byte[]> dropped = new ArrayList<>();
+            queue.drainTo(dropped);
+            for (byte[] bytes : dropped) {
+                governor.release(bytes.length);
+            }
+            queue.offer(END);
+        }
+        super.close();
+    }
+
+    private void digest() {
+        try {
+            byte[] bytes;
+            while ((bytes = queue.take()) != END) {
+                hasher.putBytes(bytes);
+                governor.release(bytes.length);
+                synchronized (lock) {
+                    pending--;
+                    lock.notifyAll();
+                }
+            }
+            actual.complete(hasher.hash().asInt());
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            actual.completeExceptionally(ex);
+        }
+    }
+
+    private void update(final byte[] b, final int off, final int len) throws IOException {
+        try {
+            if (governor.tryReserve(len)) {
+                synchronized (lock) {
+                    pending++;
+                }
+                queue.put(Arrays.copyOfRange(b, off, off + len));
+            } else {
+                // the helper is idle while no copy is pending
+                synchronized (lock) {
+                    while (pending > 0) {
+                        lock.wait();
+                    }
+                }
+                hasher.putBytes(b, off, len);
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while computing the checksum of " + name);
+        }
+    }
+
+    private void validate() throws IOException {
+        if (ended) {
+            return;
+        }
+        ended = true;
+        try {
+            queue.put(END);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while computing the checksum of " + name);
+        }
+        final int crc32c;
+        try {
+            crc32c = actual.get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while computing the checksum of " + name);
+        } catch (final ExecutionException ex) {
+            throw new IOException("Could not compute the checksum of " + name, ex.getCause());
+        }
+        if (crc32c != expected) {
+            throw new IOException(String.format("CRC32C mismatch of %s: expected %08x, but the downloaded data has %08x", name, expected, crc32c));
+        }
+    }
+}
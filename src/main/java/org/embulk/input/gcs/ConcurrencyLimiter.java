@@ -0,0 +1,383 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.common.base.Throwables;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.embulk.config.ConfigException;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of requests in flight to GCS, shared by all the tasks reading the same buckets in the JVM.
+ *
+ * The limit is tuned by AIMD: it is halved when GCS throttles a request with 429 or 503, and it grows by one after
+ * as many successful requests as the limit. Only the first throttled request of a round halves the limit, and the
+ * requests sent before that are not counted again. When the response has Retry-After, no request is sent until then.
+ *
+ * A request holds its slot until its body is closed, so that a download counts while it is being read.
+ */
+class ConcurrencyLimiter {
+    interface Task {
+        @Config("adaptive_concurrency")
+        @ConfigDefault("false")
+        boolean getAdaptiveConcurrency();
+
+        @Config("max_concurrent_requests")
+        @ConfigDefault("64")
+        int getMaxConcurrentRequests();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    private static final ConcurrentHashMap<String, ConcurrencyLimiter> SHARED = new ConcurrentHashMap<>();
+    // empty if it is not accessible, and then no limiter can be created
+    private static final Optional<Method> BUILD_REQUEST = findBuildRequest();
+
+    private final int max;
+    private double limit;
+    private int inFlight = 0;
+    private long lastDecreaseNanos;
+    private long resumeNanos;
+
+    ConcurrencyLimiter(final int max) {
+        if (max <= 0) {
+            throw new ConfigException(String.format("max_concurrent_requests must be positive, but %d", max));
+        }
+        if (!BUILD_REQUEST.isPresent()) {
+            throw new ConfigException("adaptive_concurrency is not available, since HttpTransport#buildRequest of google-http-client is not accessible");
+        }
+        this.max = max;
+        this.limit = max;
+        this.lastDecreaseNanos = System.nanoTime();
+        this.resumeNanos = lastDecreaseNanos;
+    }
+
+    /**
+     * Returns the limiter shared by the tasks reading the same buckets from the same endpoint in this JVM.
+     */
+    static ConcurrencyLimiter of(final PluginTask task) {
+        final String key = task.getEndpoint().orElse("") + "\n" + String.join("\n", GcsFileInput.getBuckets(task));
+        return SHARED.computeIfAbsent(key, k -> new ConcurrencyLimiter(task.getMaxConcurrentRequests()));
+    }
+
+    /**
+     * Returns a transport whose requests are sent through this limiter.
+     */
+    HttpTransport wrap(final HttpTransport transport) {
+        return new LimitedTransport(transport);
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Waits for a slot, and returns when it was taken, to be passed to {@link #release(long, int, Optional)}.
+     */
+    synchronized long acquire() throws InterruptedException {
+        while (true) {
+            final long wait = resumeNanos - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, wait);
+            } else if (inFlight < (int) limit) {
+                inFlight++;
+                return System.nanoTime();
+            } else {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Releases a slot taken at {@code acquiredNanos} by a request which was answered by {@code statusCode}, or 0 if it failed
+     * without a response.
+     */
+    synchronized void release(final long acquiredNanos, final int statusCode, final Optional<Duration> retryAfter) {
+        inFlight--;
+        if (statusCode == 429 || statusCode == 503) {
+            final long now = System.nanoTime();
+            if (acquiredNanos - lastDecreaseNanos >= 0 && limit > 1) {
+                limit = Math.max(1, Math.floor(limit / 2));
+                lastDecreaseNanos = now;
+                LOG.info("GCS returned {}. Reducing concurrent requests to {}", statusCode, (int) limit);
+            }
+            if (retryAfter.isPresent() && now + retryAfter.get().toNanos() - resumeNanos > 0) {
+                resumeNanos = now + retryAfter.get().toNanos();
+                LOG.info("GCS returned {} with Retry-After. Pausing requests for {} ms", statusCode, retryAfter.get().toMillis());
+            }
+        } else if (statusCode > 0 && statusCode < 500) {
+            limit = Math.min(max, limit + 1 / Math.floor(limit));
+        }
+        notifyAll();
+    }
+
+    /**
+     * Parses Retry-After in either seconds or an HTTP date.
+     */
+    static Optional<Duration> parseRetryAfter(final String value, final ZonedDateTime now) {
+        if (value == null || value.trim().isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim()))));
+        } catch (final NumberFormatException ex) {
+            // not in seconds
+        }
+        try {
+            final Duration duration = Duration.between(now, ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+            return Optional.of(duration.isNegative() ? Duration.ZERO : duration);
+        } catch (final DateTimeParseException ex) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Returns HttpTransport#buildRequest made accessible, or empty if another version of google-http-client doesn't have it,
+     * or if the access is denied, such as by a security manager.
+     */
+    private static Optional<Method> findBuildRequest() {
+        try {
+            final Method method = HttpTransport.class.getDeclaredMethod("buildRequest", String.class, String.class);
+            method.setAccessible(true);
+            return Optional.of(method);
+        } catch (final NoSuchMethodException | RuntimeException ex) {
+            LOG.warn("HttpTransport#buildRequest is not accessible, so adaptive_concurrency is not available", ex);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Sends the requests of the underlying transport through the limiter. HttpTransport#buildRequest is protected, and
+     * NetHttpTransport is final, so the request is built by reflection. The public hooks of HttpRequest, such as
+     * HttpExecuteInterceptor and HttpResponseInterceptor, can't tell when the body of a response is closed.
+     */
+    private class LimitedTransport extends HttpTransport {
+        private final HttpTransport transport;
+
+        LimitedTransport(final HttpTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public boolean supportsMethod(final String method) throws IOException {
+            return transport.supportsMethod(method);
+        }
+
+        @Override
+        protected LowLevelHttpRequest buildRequest(final String method, final String url) throws IOException {
+            try {
+                return new LimitedRequest((LowLevelHttpRequest) BUILD_REQUEST.get().invoke(transport, method, url));
+            } catch (final InvocationTargetException ex) {
+                Throwables.throwIfInstanceOf(ex.getCause(), IOException.class);
+                Throwables.throwIfUnchecked(ex.getCause());
+                throw new IOException(ex.getCause());
+            } catch (final IllegalAccessException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public void shutdown() throws IOException {
+            transport.shutdown();
+        }
+    }
+
+    private class LimitedRequest extends LowLevelHttpRequest {
+        private final LowLevelHttpRequest request;
+
+        LimitedRequest(final LowLevelHttpRequest request) {
+            this.request = request;
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) throws IOException {
+            request.addHeader(name, value);
+        }
+
+        @Override
+        public void setTimeout(final int connectTimeout, final int readTimeout) throws IOException {
+            request.setTimeout(connectTimeout, readTimeout);
+        }
+
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+            request.setContentLength(getContentLength());
+            request.setContentEncoding(getContentEncoding());
+            request.setContentType(getContentType());
+            request.setStreamingContent(getStreamingContent());
+
+            final long acquiredNanos;
+            try {
+                acquiredNanos = acquire();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a slot of concurrent requests");
+            }
+            final LowLevelHttpResponse response;
+            try {
+                response = request.execute();
+            } catch (final IOException | RuntimeException ex) {
+                release(acquiredNanos, 0, Optional.empty());
+                throw ex;
+            }
+            final int statusCode = response.getStatusCode();
+            Optional<Duration> retryAfter = Optional.empty();
+            for (int i = 0; i < response.getHeaderCount(); i++) {
+                if ("Retry-After".equalsIgnoreCase(response.getHeaderName(i))) {
+                    retryAfter = parseRetryAfter(response.getHeaderValue(i), ZonedDateTime.now());
+                }
+            }
+            return new LimitedResponse(response, acquiredNanos, statusCode, retryAfter);
+        }
+    }
+
+    /**
+     * Releases the slot when the body is read to the end or closed, or when the response is disconnected.
+     */
+    private class LimitedResponse extends LowLevelHttpResponse {
+        private final LowLevelHttpResponse response;
+        private final long acquiredNanos;
+        private final int statusCode;
+        private final Optional<Duration> retryAfter;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        LimitedResponse(final LowLevelHttpResponse response, final long acquiredNanos, final int statusCode, final Optional<Duration> retryAfter) {
+            this.response = response;
+            this.acquiredNanos = acquiredNanos;
+            this.statusCode = statusCode;
+            this.retryAfter = retryAfter;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            final InputStream content = response.getContent();
+            if (content == null) {
+                releaseOnce();
+                return null;
+            }
+            return new FilterInputStream(content) {
+                @Override
+                public int read() throws IOException {
+                    return releaseAtEnd(super.read());
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    return releaseAtEnd(super.read(b, off, len));
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        releaseOnce();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public String getContentEncoding() throws IOException {
+            return response.getContentEncoding();
+        }
+
+        @Override
+        public long getContentLength() throws IOException {
+            return response.getContentLength();
+        }
+
+        @Override
+        public String getContentType() throws IOException {
+            return response.getContentType();
+        }
+
+        @Override
+        public String getStatusLine() throws IOException {
+            return response.getStatusLine();
+        }
+
+        @Override
+        public int getStatusCode() throws IOException {
+            return statusCode;
+        }
+
+        @Override
+        public String getReasonPhrase() throws IOException {
+            return response.getReasonPhrase();
+        }
+
+        @Override
+        public int getHeaderCount() throws IOException {
+            return response.getHeaderCount();
+        }
+
+        @Override
+        public String getHeaderName(final int index) throws IOException {
+            return response.getHeaderName(index);
+        }
+
+        @Override
+        public String getHeaderValue(final int index) throws IOException {
+            return response.getHeaderValue(index);
+        }
+
+        @Override
+        public void disconnect() throws IOException {
+            try {
+                response.disconnect();
+            } finally {
+                releaseOnce();
+            }
+        }
+
+        private int releaseAtEnd(final int n) {
+            if (n < 0) {
+                releaseOnce();
+            }
+            return n;
+        }
+
+        private void releaseOnce() {
+            if (released.compareAndSet(false, true)) {
+                release(acquiredNanos, statusCode, retryAfter);
+            }
+        }
+    }
+}
@@ -30,9 +30,12 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import org.embulk.config.ConfigSource;
@@ -40,7 +43,7 @@ import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
 
 public class FileList {
-    public interface Task {
+    public interface Task extends PathFilter.Task {
         @Config("path_match_pattern")
         @ConfigDefault("\".*\"")
         String getPathMatchPattern();
@@ -55,51 +58,38 @@ public class FileList {
         long getMinTaskSize();
     }
 
-    public static class Entry {
-        private int index;
-        private long size;
-
-        @JsonCreator
-        public Entry(
-                @JsonProperty("index") final int index,
-                @JsonProperty("size") final long size) {
-            this.index = index;
-            this.size = size;
-        }
-
-        @JsonProperty("index")
-        public int getIndex() {
-            return index;
-        }
-
-        @JsonProperty("size")
-        public long getSize() {
-            return size;
-        }
-    }
-
     public static class Builder {
         private final ByteArrayOutputStream binary;
         private final OutputStream stream;
-        private final List<Entry> entries = new ArrayList<>();
+        // sizes of the added files, indexed by the order they are written into the stream
+        private long[] sizes = new long[INITIAL_CAPACITY];
+        // CRC32C of the added files if checksums are enabled, otherwise null
+        private int[] checksums = null;
+        // generations of the added files if they are enabled, otherwise null
+        private long[] generations = null;
+        private int count = 0;
         private String last = null;
+        private int source = 0;
+        private boolean finished = false;
 
         private int limitCount = Integer.MAX_VALUE;
         private long minTaskSize = 1;
-        private Pattern pathMatchPattern;
+        private volatile PathFilter filter;
 
         private final ByteBuffer castBuffer = ByteBuffer.allocate(4);
+        // builders of the files added by other threads, merged after the files of this builder in the order of the keys
+        private final ConcurrentSkipListMap<Integer, Builder> segments = new ConcurrentSkipListMap<>();
 
         public Builder(final Task task) {
             this();
-            this.pathMatchPattern = Pattern.compile(task.getPathMatchPattern());
+            this.filter = PathFilter.of(task.getPathMatchPattern(), task);
             this.limitCount = task.getTotalFileCountLimit();
             this.minTaskSize = task.getMinTaskSize();
         }
 
         public Builder(final ConfigSource config) {
             this();
-            this.pathMatchPattern = Pattern.compile(config.get(String.class, "path_match_pattern", ".*"));
+            this.filter = PathFilter.of(config.get(String.class, "path_match_pattern", ".*"));
             this.limitCount = config.get(int.class, "total_file_count_limit", Integer.MAX_VALUE);
             this.minTaskSize = config.get(long.class, "min_task_size", 0L);
         }
@@ -123,13 +113,92 @@ public class FileList {
             return this;
         }
 
-        public synchronized Builder pathMatchPattern(final String pattern) {
-            this.pathMatchPattern = Pattern.compile(pattern);
+        // replaces path_match_pattern, keeping the includes and the excludes
+        public Builder pathMatchPattern(final String pattern) {
+            this.filter = filter == null ? PathFilter.of(pattern) : filter.withPathMatchPattern(pattern);
+            return this;
+        }
+
+        // returns the prefix to list objects by, which may be narrowed by path_match_pattern and the includes
+        public String narrowPrefix(final String prefix) {
+            return filter.narrowPrefix(prefix);
+        }
+
+        // returns false if no path sorted after this can be added, so that the listing can stop
+        public boolean mayMatchAfter(final String path) {
+            return filter.mayMatchAfter(path);
+        }
+
+        /**
+         * Returns the segment {@code index} of this builder, to which a thread can add files without contending with the others.
+         *
+         * A segment has its own gzip stream, so that the files are compressed in the thread adding them. It takes over the
+         * filter, the checksums, the generations, and the source of this builder at the time, and total_file_count_limit is applied to each
+         * segment and again to the merged list. build() merges the segments after the files of this builder in the order of
+         * {@code index}, whichever thread has added them first, so the list is the same across runs.
+         *
+         * The thread should call finish() of the segment when it has added all the files, so that only the segments being
+         * added to hold the native memory of their gzip streams, however many segments there are.
+         */
+        public Builder segment(final int index) {
+            return segments.computeIfAbsent(index, key -> {
+                final Builder segment = new Builder().limitTotalFileCount(limitCount).minTaskSize(minTaskSize).source(source);
+                segment.filter = filter;
+                return segment.checksums(checksums != null).generations(generations != null);
+            });
+        }
+
+        // index of the source, such as an element of the sources option, that the files of this builder belong to
+        public Builder source(final int index) {
+            this.source = index;
+            return this;
+        }
+
+        // records CRC32C of each file, which is given to add(String, long, int)
+        public synchronized Builder checksums(final boolean enabled) {
+            this.checksums = enabled ? new int[sizes.length] : null;
+            return this;
+        }
+
+        // records the generation of each file, which is given to add(String, long, int, long), so that the same version is read
+        public synchronized Builder generations(final boolean enabled) {
+            this.generations = enabled ? new long[sizes.length] : null;
+            return this;
+        }
+
+        /**
+         * Finishes the gzip stream of this builder, which frees its native memory. No file can be added after that, and the
+         * compressed files and their sizes are kept until build().
+         */
+        public synchronized Builder finish() {
+            if (!finished) {
+                finished = true;
+                try {
+                    stream.close();
+                } catch (final IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Adds the files of {@code source} in {@code files}, such as the ones of the previous listing, with their sizes,
+         * checksums, and generations. They are not matched again.
+         */
+        public Builder addAll(final FileList files, final int source) {
+            final List<String> paths = files.getAllFiles();
+            for (int i = 0; i < paths.size(); i++) {
+                if (files.getSource(i) == source) {
+                    append(paths.get(i), files.sizes[i], files.hasChecksums() ? files.getChecksum(i) : 0,
+                            files.hasGenerations() ? files.getGeneration(i) : 0);
+                }
+            }
             return this;
         }
 
         public int size() {
-            return entries.size();
+            return count;
         }
 
         public boolean needsMore() {
@@ -137,19 +206,48 @@ public class FileList {
         }
 
         // returns true if this file is used
-        public synchronized boolean add(final String path, final long size) {
-            // TODO throw IllegalStateException if stream is already closed
+        public boolean add(final String path, final long size) {
+            return add(path, size, 0);
+        }
 
-            if (!needsMore()) {
+        // returns true if this file is used
+        public boolean add(final String path, final long size, final int crc32c) {
+            return add(path, size, crc32c, 0);
+        }
+
+        // returns true if this file is used
+        public boolean add(final String path, final long size, final int crc32c, final long generation) {
+            // the filter is immutable, so that paths are matched out of the lock
+            if (!filter.matches(path)) {
                 return false;
             }
+            return append(path, size, crc32c, generation);
+        }
 
-            if (!pathMatchPattern.matcher(path).find()) {
+        private synchronized boolean append(final String path, final long size, final int crc32c, final long generation) {
+            if (finished) {
+                throw new IllegalStateException("No file can be added to a finished FileList.Builder");
+            }
+            if (!needsMore()) {
                 return false;
             }
 
-            int index = entries.size();
-            entries.add(new Entry(index, size));
+            if (count == sizes.length) {
+                sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                if (checksums != null) {
+                    checksums = Arrays.copyOf(checksums, sizes.length);
+                }
+                if (generations != null) {
+                    generations = Arrays.copyOf(generations, sizes.length);
+                }
+            }
+            if (checksums != null) {
+                checksums[count] = crc32c;
+            }
+            if (generations != null) {
+                generations[count] = generation;
+            }
+            sizes[count++] = size;
 
             byte[] data = path.getBytes(StandardCharsets.UTF_8);
             castBuffer.putInt(0, data.length);
@@ -164,66 +262,241 @@ public class FileList {
             return true;
         }
 
-        public synchronized FileList build() {
-            try {
-                stream.close();
-            } catch (final IOException ex) {
-                throw new RuntimeException(ex);
+        public FileList build() {
+            return merge(Collections.singletonList(this));
+        }
+
+        /**
+         * Builds a FileList that contains the files of {@code builders} in the given order.
+         *
+         * The gzip streams of the builders are concatenated as they are, which GZIPInputStream reads as one stream.
+         * total_file_count_limit and min_task_size of the first builder are applied to the merged list.
+         * The segments of each builder follow its own files.
+         */
+        public static FileList merge(final List<Builder> builders) {
+            final Builder first = builders.get(0);
+            final List<Builder> all = new ArrayList<>();
+            for (Builder builder : builders) {
+                builder.addWithSegments(all);
+            }
+            return merge(first, all);
+        }
+
+        private void addWithSegments(final List<Builder> all) {
+            all.add(this);
+            for (Builder segment : segments.values()) {
+                segment.addWithSegments(all);
+            }
+        }
+
+        private static FileList merge(final Builder first, final List<Builder> builders) {
+            long candidates = 0;
+            boolean withChecksums = true;
+            boolean withGenerations = true;
+            for (Builder builder : builders) {
+                candidates += builder.size();
+                // a builder without files, such as the parent of segments, doesn't tell whether checksums are recorded
+                withChecksums &= builder.size() == 0 || builder.checksums != null;
+                withGenerations &= builder.size() == 0 || builder.generations != null;
+            }
+            final int total = (int) Math.min(candidates, first.limitCount);
+
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            final long[] sizes = new long[total];
+            final int[] sources = new int[total];
+            final int[] checksums = new int[withChecksums ? total : 0];
+            final long[] generations = new long[withGenerations ? total : 0];
+            final List<Optional<String>> lastPaths = new ArrayList<>();
+            int merged = 0;
+            for (Builder builder : builders) {
+                final byte[] binary = builder.close();
+                final int taken = Math.min(builder.size(), total - merged);
+                if (taken == 0) {
+                    if (data.size() == 0) {
+                        // an empty gzip stream, so that the list without files can still be read
+                        data.write(binary, 0, binary.length);
+                    }
+                    continue;
+                }
+                // files beyond the limit stay at the tail of the stream, and they are never read
+                data.write(binary, 0, binary.length);
+                System.arraycopy(builder.sizes, 0, sizes, merged, taken);
+                Arrays.fill(sources, merged, merged + taken, builder.source);
+                if (withChecksums) {
+                    System.arraycopy(builder.checksums, 0, checksums, merged, taken);
+                }
+                if (withGenerations) {
+                    System.arraycopy(builder.generations, 0, generations, merged, taken);
+                }
+                merged += taken;
+
+                final String last = taken == builder.size() ? builder.last : new EntryList(binary, 0, taken).get(taken - 1);
+                while (lastPaths.size() <= builder.source) {
+                    lastPaths.add(Optional.empty());
+                }
+                final Optional<String> current = lastPaths.get(builder.source);
+                if (!current.isPresent() || compareNames(current.get(), last) < 0) {
+                    lastPaths.set(builder.source, Optional.of(last));
+                }
             }
-            return new FileList(binary.toByteArray(), getSplits(entries), Optional.ofNullable(last));
+            return new FileList(data.toByteArray(), sizes, sources, checksums, generations, getSplits(sizes, first.minTaskSize), lastPaths);
+        }
+
+        private synchronized byte[] close() {
+            finish();
+            return binary.toByteArray();
         }
 
-        private List<List<Entry>> getSplits(final List<Entry> all) {
-            List<List<Entry>> tasks = new ArrayList<>();
+        // returns the task boundaries: task i consists of the files from splits[i] (inclusive) to splits[i + 1] (exclusive)
+        private static int[] getSplits(final long[] sizes, final long minTaskSize) {
+            int[] splits = new int[sizes.length + 1];
+            int taskCount = 0;
             long currentTaskSize = 0;
-            List<Entry> currentTask = new ArrayList<>();
-            for (Entry entry : all) {
-                currentTask.add(entry);
-                currentTaskSize += entry.getSize();  // TODO consider to multiply the size by cost_per_byte, and add cost_per_file
+            for (int i = 0; i < sizes.length; i++) {
+                currentTaskSize += sizes[i];  // TODO consider to multiply the size by cost_per_byte, and add cost_per_file
                 if (currentTaskSize >= minTaskSize) {
-                    tasks.add(currentTask);
-                    currentTask = new ArrayList<>();
+                    splits[++taskCount] = i + 1;
                     currentTaskSize = 0;
                 }
             }
-            if (!currentTask.isEmpty()) {
-                tasks.add(currentTask);
+            if (splits[taskCount] < sizes.length) {
+                splits[++taskCount] = sizes.length;
             }
-            return tasks;
+            return Arrays.copyOf(splits, taskCount + 1);
         }
     }
 
+    private static final int INITIAL_CAPACITY = 16;
+
     private final byte[] data;
-    private final List<List<Entry>> tasks;
-    private final Optional<String> last;
+    private final long[] sizes;
+    private final int[] sources;
+    // empty if the checksums are not recorded
+    private final int[] checksums;
+    // empty if the generations are not recorded
+    private final long[] generations;
+    private final int[] splits;
+    private final List<Optional<String>> lastPaths;
+
+    private FileList(final byte[] data, final long[] sizes, final int[] sources, final int[] checksums, final long[] generations,
+                     final int[] splits, final List<Optional<String>> lastPaths) {
+        this.data = data;
+        this.sizes = sizes;
+        this.sources = sources;
+        this.checksums = checksums;
+        this.generations = generations;
+        this.splits = splits;
+        this.lastPaths = lastPaths;
+    }
 
     @JsonCreator
     @Deprecated
     public FileList(
             @JsonProperty("data") final byte[] data,
-            @JsonProperty("tasks") final List<List<Entry>> tasks,
-            @JsonProperty("last") final Optional<String> last) {
+            @JsonProperty("entries") final byte[] entries,
+            @JsonProperty("last_paths") final List<Optional<String>> lastPaths) {
         this.data = data.clone();
-        this.tasks = tasks;
-        this.last = last;
+        final ByteBuffer buffer = ByteBuffer.wrap(entries);
+        this.sizes = new long[(int) readVarint(buffer)];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = readVarint(buffer);
+        }
+        this.splits = new int[(int) readVarint(buffer) + 1];
+        for (int i = 1; i < splits.length; i++) {
+            splits[i] = splits[i - 1] + (int) readVarint(buffer);
+        }
+        this.sources = new int[sizes.length];
+        for (int i = 0; i < sources.length; ) {
+            final int source = (int) readVarint(buffer);
+            final int length = (int) readVarint(buffer);
+            Arrays.fill(sources, i, i + length, source);
+            i += length;
+        }
+        this.checksums = new int[buffer.hasRemaining() ? (int) readVarint(buffer) : 0];
+        for (int i = 0; i < checksums.length; i++) {
+            checksums[i] = buffer.getInt();
+        }
+        this.generations = new long[buffer.hasRemaining() ? (int) readVarint(buffer) : 0];
+        for (int i = 0; i < generations.length; i++) {
+            generations[i] = readVarint(buffer);
+        }
+        this.lastPaths = lastPaths;
     }
 
     @JsonIgnore
     public Optional<String> getLastPath(final Optional<String> lastLastPath) {
-        if (last.isPresent()) {
-            return last;
+        return getLastPath(0, lastLastPath);
+    }
+
+    @JsonIgnore
+    public Optional<String> getLastPath(final int source, final Optional<String> lastLastPath) {
+        if (source < lastPaths.size() && lastPaths.get(source).isPresent()) {
+            return lastPaths.get(source);
         }
         return lastLastPath;
     }
 
     @JsonIgnore
     public int getTaskCount() {
-        return tasks.size();
+        return splits.length - 1;
     }
 
     @JsonIgnore
     public List<String> get(final int i) {
-        return new EntryList(data, tasks.get(i));
+        return new EntryList(data, splits[i], splits[i + 1]);
+    }
+
+    // returns the files of all the tasks, which are indexed by getFileIndex
+    @JsonIgnore
+    public List<String> getAllFiles() {
+        return new EntryList(data, 0, sizes.length);
+    }
+
+    @JsonIgnore
+    public int getFileCount() {
+        return sizes.length;
+    }
+
+    @JsonIgnore
+    public long getTotalSize() {
+        long total = 0;
+        for (long size : sizes) {
+            total += size;
+        }
+        return total;
+    }
+
+    // returns the index of the j-th file of the i-th task in the files of all the tasks
+    @JsonIgnore
+    public int getFileIndex(final int i, final int j) {
+        return splits[i] + j;
+    }
+
+    @JsonIgnore
+    public int getSource(final int index) {
+        return sources[index];
+    }
+
+    @JsonIgnore
+    public boolean hasChecksums() {
+        return checksums.length > 0;
+    }
+
+    // returns CRC32C of the file, which is available only if hasChecksums() is true
+    @JsonIgnore
+    public int getChecksum(final int index) {
+        return checksums[index];
+    }
+
+    @JsonIgnore
+    public boolean hasGenerations() {
+        return generations.length > 0;
+    }
+
+    // returns the generation of the file, which is available only if hasGenerations() is true
+    @JsonIgnore
+    public long getGeneration(final int index) {
+        return generations[index];
     }
 
     @JsonProperty("data")
@@ -232,29 +505,113 @@ public class FileList {
         return data.clone();
     }
 
-    @JsonProperty("tasks")
+    /**
+     * Encodes the file sizes and the task boundaries as unsigned varints.
+     *
+     * Sizes are written as they are, boundaries as the number of files in each task, sources as
+     * run-lengths, checksums as 4-byte integers if recorded, and generations as varints if recorded, so that a list of
+     * millions of small files costs a few bytes per file instead of a JSON object per file.
+     */
+    @JsonProperty("entries")
     @Deprecated
-    public List<List<Entry>> getTasks() {
-        return tasks;
+    public byte[] getEntries() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(sizes.length * 3 + splits.length + 10);
+        writeVarint(out, sizes.length);
+        for (long size : sizes) {
+            writeVarint(out, size);
+        }
+        writeVarint(out, splits.length - 1);
+        for (int i = 1; i < splits.length; i++) {
+            writeVarint(out, splits[i] - splits[i - 1]);
+        }
+        for (int i = 0; i < sources.length; ) {
+            int length = 1;
+            while (i + length < sources.length && sources[i + length] == sources[i]) {
+                length++;
+            }
+            writeVarint(out, sources[i]);
+            writeVarint(out, length);
+            i += length;
+        }
+        writeVarint(out, checksums.length);
+        final ByteBuffer checksumBuffer = ByteBuffer.allocate(4 * checksums.length);
+        checksumBuffer.asIntBuffer().put(checksums);
+        out.write(checksumBuffer.array(), 0, checksumBuffer.capacity());
+        if (generations.length > 0) {
+            writeVarint(out, generations.length);
+            for (long generation : generations) {
+                writeVarint(out, generation);
+            }
+        }
+        return out.toByteArray();
     }
 
-    @JsonProperty("last")
+    @JsonProperty("last_paths")
     @Deprecated
-    public Optional<String> getLast() {
-        return last;
+    public List<Optional<String>> getLastPaths() {
+        return lastPaths;
+    }
+
+    /**
+     * The order of object names in GCS, which is the order of their UTF-8 bytes, and of their code points. It differs from
+     * {@code String.compareTo} for a character out of the BMP, which is sorted after U+E000 to U+FFFF.
+     */
+    static final Comparator<String> NAME_ORDER = FileList::compareNames;
+
+    static int compareNames(final String a, final String b) {
+        final int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            final char x = a.charAt(i);
+            final char y = b.charAt(i);
+            if (x != y) {
+                return toCodePointOrder(x) - toCodePointOrder(y);
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    // moves surrogates after U+E000 to U+FFFF, so that UTF-16 code units are compared in the order of code points
+    private static int toCodePointOrder(final char c) {
+        if (c < Character.MIN_SURROGATE) {
+            return c;
+        }
+        return Character.isSurrogate(c) ? c + 0x2000 : c - 0x800;
+    }
+
+    // see: https://protobuf.dev/programming-guides/encoding/#varints
+    static void writeVarint(final ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(final ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
     }
 
     private static class EntryList extends AbstractList<String> {
         private final byte[] data;
-        private final List<Entry> entries;
+        private final int begin;
+        private final int end;
         private InputStream stream;
         private int current;
 
         private final ByteBuffer castBuffer = ByteBuffer.allocate(4);
 
-        public EntryList(final byte[] data, final List<Entry> entries) {
+        public EntryList(final byte[] data, final int begin, final int end) {
             this.data = data;
-            this.entries = entries;
+            this.begin = begin;
+            this.end = end;
             try {
                 this.stream = new BufferedInputStream(new GZIPInputStream(new ByteArrayInputStream(data)));
             } catch (final IOException ex) {
@@ -265,8 +622,11 @@ public class FileList {
 
         @Override
         public synchronized String get(final int i) {
-            Entry e = entries.get(i);
-            if (e.getIndex() < current) {
+            if (i < 0 || i >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+            }
+            final int index = begin + i;
+            if (index < current) {
                 // rewind to the head
                 try {
                     stream.close();
@@ -277,32 +637,24 @@ public class FileList {
                 current = 0;
             }
 
-            while (current < e.getIndex()) {
+            while (current < index) {
                 readNext();
             }
-            // now current == e.getIndex()
+            // now current == index
             return readNextString();
         }
 
         @Override
         public int size() {
-            return entries.size();
+            return end - begin;
         }
 
         private byte[] readNext() {
             try {
-                int n = stream.read(castBuffer.array());
-                if (n != castBuffer.capacity()) {
-                    throw new IllegalArgumentException(
-                            "Unexpected stream close, expecting " + castBuffer.capacity() + " bytes, but received " + n + " bytes");
-                }
+                readFully(castBuffer.array());
                 int len = castBuffer.getInt(0);
                 byte[] b = new byte[len];  // here should be able to use a pooled buffer because read data is ignored if readNextString doesn't call this method
-                n = stream.read(b);
-                if (n != len) {
-                    throw new IllegalArgumentException(
-                            "Unexpected stream close, expecting " + castBuffer.capacity() + " bytes, but received " + n + " bytes");
-                }
+                readFully(b);
 
                 current++;
 
@@ -312,6 +664,18 @@ public class FileList {
             }
         }
 
+        // a read may return fewer bytes at the end of the buffer, or at the boundary of concatenated gzip streams
+        private void readFully(final byte[] b) throws IOException {
+            int read = 0;
+            while (read < b.length) {
+                final int n = stream.read(b, read, b.length - read);
+                if (n < 0) {
+                    throw new IllegalArgumentException("Unexpected stream close, expecting " + b.length + " bytes, but received " + read + " bytes");
+                }
+                read += n;
+            }
+        }
+
         private String readNextString() {
             return new String(readNext(), StandardCharsets.UTF_8);
         }
@@ -23,7 +23,16 @@ import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.Storage;
 import com.google.cloud.storage.StorageException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import org.embulk.config.ConfigException;
 import org.embulk.config.TaskReport;
 import org.embulk.spi.Exec;
@@ -34,16 +43,40 @@ import org.slf4j.LoggerFactory;
 
 public class GcsFileInput extends InputStreamFileInput implements TransactionalFileInput {
     private static final Logger LOG = LoggerFactory.getLogger(org.embulk.input.gcs.GcsFileInput.class);
+    private static final int MAX_LISTING_THREADS = 8;
+    // the maximum number of requests in a batch request of GCS
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private final SingleFileProvider provider;
+    private final boolean workStealing;
+    private final boolean adaptiveChunkSize;
 
     GcsFileInput(final PluginTask task, final int taskIndex) {
-        super(Exec.getBufferAllocator(), new SingleFileProvider(task, taskIndex));
+        this(new SingleFileProvider(task, taskIndex), task.getWorkQueueId().isPresent(), task.getAdaptiveChunkSize());
+    }
+
+    private GcsFileInput(final SingleFileProvider provider, final boolean workStealing, final boolean adaptiveChunkSize) {
+        super(Exec.getBufferAllocator(), provider);
+        this.provider = provider;
+        this.workStealing = workStealing;
+        this.adaptiveChunkSize = adaptiveChunkSize;
     }
 
     public void abort() {
     }
 
     public TaskReport commit() {
-        return CONFIG_MAPPER_FACTORY.newTaskReport();
+        TaskReport report = CONFIG_MAPPER_FACTORY.newTaskReport();
+        if (workStealing) {
+            report.set("consumed_files", provider.getConsumedFiles());
+        }
+        if (adaptiveChunkSize) {
+            final Map<String, Object> metrics = provider.getChunkSize().getMetrics();
+            LOG.info("Read {} bytes in {} chunks of {} to {} bytes at {} bytes/s", metrics.get("bytes"), metrics.get("chunks"),
+                    metrics.get("min_chunk_size"), metrics.get("max_chunk_size"), metrics.get("bytes_per_second"));
+            report.set("chunk_size", metrics);
+        }
+        return report;
     }
 
     @Override
@@ -54,39 +87,283 @@ public class GcsFileInput extends InputStreamFileInput implements TransactionalF
      * Lists GCS filenames filtered by prefix.
      *
      * The resulting list does not include the file that's size == 0.
+     *
+     * Each page is requested with retries, and the listing fails instead of returning a partial list
+     * when a page cannot be listed. If listing_checkpoint_file is set, the listed pages are recorded
+     * so that the next attempt resumes from the last page listed successfully.
+     *
+     * In preview and guess, only the first page is listed, which is enough to sample the files.
+     *
+     * If sources are specified, they are listed concurrently, and merged into a FileList in the order of sources.
+     * Partitions with their own watermarks, and the prefixes expanded from a time template, are listed in the same way,
+     * in the order of names.
      */
     static FileList listFiles(final PluginTask task) {
-        Storage client = AuthUtils.newClient(task);
-        String bucket = task.getBucket();
+        return listFiles(task, AuthUtils.newClient(task), Optional.empty());
+    }
 
+    /**
+     * Lists with {@code client}, which can be shared by the listings repeated while waiting for new objects.
+     *
+     * {@code listed} is the files of the previous listing while waiting, which are kept, and each source is listed only after
+     * the last file listed from it, so that a listing costs only the new objects. The partitions and the prefixes of a time
+     * template are listed again from their start, because the last file of one of them doesn't bound the others.
+     */
+    static FileList listFiles(final PluginTask task, final Storage client, final Optional<FileList> listed) {
         // @see https://cloud.google.com/storage/docs/json_api/v1/buckets/get
         if (LOG.isDebugEnabled()) {
-            printBucketInfo(client, bucket);
+            printBucketInfo(client, task.getBucket());
         }
 
-        String prefix = task.getPathPrefix().orElse("");
-        String lastKey = task.getLastPath().isPresent() ? base64Encode(task.getLastPath().get()) : "";
-        FileList.Builder builder = new FileList.Builder(task);
+        if (task.getSources().isEmpty()) {
+            final Optional<PartitionWatermarks> partitions = getPartitionWatermarks(task);
+            if (partitions.isPresent()) {
+                final List<PartitionWatermarks.Listing> listings = partitions.get().getListings(task.getLastPath());
+                final FileList.Builder files = new FileList.Builder(task);
+                final List<Callable<FileList.Builder>> calls = new ArrayList<>();
+                for (int i = 0; i < listings.size(); i++) {
+                    final int index = i;
+                    final PartitionWatermarks.Listing listing = listings.get(i);
+                    // all the partitions are in the bucket of source 0
+                    calls.add(() -> listFiles(task, client, files.segment(index), 0, task.getBucket(), listing.getPrefix(),
+                            task.getPathMatchPattern(), listing.getLastPath(), "." + index, Optional.empty(), Optional.empty()));
+                }
+                return listConcurrently(files, calls);
+            }
+            // with late_arrival_window, the listing starts from the boundary of the index instead of last_path
+            final Optional<ProcessedIndex> processed = getProcessedIndex(task);
+            final Optional<String> lastPath = processed.isPresent() ? processed.get().getBoundary() : task.getLastPath();
+            final Optional<PrefixTemplate> template = PrefixTemplate.of(task, task.getPathPrefix());
+            if (template.isPresent()) {
+                final List<String> prefixes = template.get().expand();
+                final FileList.Builder files = new FileList.Builder(task);
+                final List<Callable<FileList.Builder>> calls = new ArrayList<>();
+                for (int i = 0; i < prefixes.size(); i++) {
+                    final int index = i;
+                    final String prefix = prefixes.get(i);
+                    if (lastPath.isPresent() && FileList.compareNames(lastPath.get(), prefix) > 0 && !lastPath.get().startsWith(prefix)) {
+                        continue; // every object of this prefix is sorted before last_path
+                    }
+                    if (task.getEndPath().isPresent() && FileList.compareNames(prefix, task.getEndPath().get()) > 0) {
+                        break; // every object of this and the later prefixes is sorted after end_path
+                    }
+                    calls.add(() -> listFiles(task, client, files.segment(index), 0, task.getBucket(), prefix, task.getPathMatchPattern(),
+                            lastPath, "." + index, processed, Optional.empty()));
+                }
+                return listConcurrently(files, calls);
+            }
+            return listFiles(task, client, new FileList.Builder(task), 0, task.getBucket(), task.getPathPrefix().orElse(""), task.getPathMatchPattern(),
+                    lastPath, "", processed, listed).build();
+        }
 
+        final List<PluginTask.Source> sources = task.getSources();
+        final List<String> buckets = getBuckets(task);
+        final FileList.Builder files = new FileList.Builder(task);
+        final List<Callable<FileList.Builder>> calls = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            final int index = i;
+            final PluginTask.Source source = sources.get(i);
+            calls.add(() -> listFiles(task, client, files.segment(index), index, buckets.get(index), source.getPathPrefix(),
+                    source.getPathMatchPattern().orElse(task.getPathMatchPattern()), source.getLastPath(), "." + index, Optional.empty(), listed));
+        }
+        return listConcurrently(files, calls);
+    }
+
+    // runs the listings concurrently, each into its own segment of files, which are merged in the order of the segments
+    private static FileList listConcurrently(final FileList.Builder files, final List<Callable<FileList.Builder>> calls) {
+        if (calls.isEmpty()) {
+            return files.build();
+        }
+        final ExecutorService executor = IoExecutors.newExecutor("embulk-input-gcs-listing", Math.min(calls.size(), MAX_LISTING_THREADS));
+        try {
+            final List<Future<FileList.Builder>> listings = new ArrayList<>();
+            for (Callable<FileList.Builder> call : calls) {
+                // the segment is finished as soon as it is listed, so that only the ones being listed hold their gzip streams
+                listings.add(executor.submit(() -> call.call().finish()));
+            }
+            for (Future<FileList.Builder> listing : listings) {
+                getListing(listing);
+            }
+            return files.build();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the metadata of the objects in paths by batch requests sent concurrently, and returns a FileList of them in the
+     * order of paths, with their real sizes, checksums, and generations.
+     *
+     * It fails with ConfigException if any of the objects doesn't exist, instead of letting the task reading it fail.
+     */
+    static FileList lookupFiles(final PluginTask task, final Storage client, final FileList.Builder builder) {
+        final List<String> paths = task.getPathFiles();
+        final String bucket = task.getBucket();
+        final ExecutorService executor = IoExecutors.newExecutor("embulk-input-gcs-metadata",
+                Math.min((paths.size() + MAX_BATCH_SIZE - 1) / MAX_BATCH_SIZE, MAX_LISTING_THREADS));
+        final List<String> missing = new ArrayList<>();
         try {
-            // @see https://cloud.google.com/storage/docs/json_api/v1/objects/list
-            Page<Blob> blobs = client.list(bucket, Storage.BlobListOption.prefix(prefix), Storage.BlobListOption.pageToken(lastKey));
-            for (Blob blob : blobs.iterateAll()) {
-                if (blob.getSize() > 0) {
-                    builder.add(blob.getName(), blob.getSize());
+            final List<Future<Blob[]>> batches = new ArrayList<>();
+            for (int i = 0; i < paths.size(); i += MAX_BATCH_SIZE) {
+                final List<String> keys = paths.subList(i, Math.min(i + MAX_BATCH_SIZE, paths.size()));
+                batches.add(executor.submit(() -> RetryUtils.withRetry(task, RetryUtils.getAll(client, bucket, keys))));
+            }
+            builder.checksums(task.getValidateChecksum()).generations(true);
+            int index = 0;
+            for (Future<Blob[]> batch : batches) {
+                for (Blob blob : getListing(batch)) {
+                    final String path = paths.get(index++);
+                    if (blob == null) {
+                        missing.add(path);
+                        continue;
+                    }
+                    final int crc32c = blob.getCrc32c() != null ? ChecksumInputStream.decodeCrc32c(blob.getCrc32c()) : 0;
+                    builder.add(path, blob.getSize(), crc32c, blob.getGeneration());
+                }
+            }
+        } catch (final RuntimeException e) {
+            final Optional<StorageException> cause = RetryUtils.findStorageException(e);
+            if (isConfigError(cause)) {
+                throw new ConfigException(String.format("Could not get the objects in paths from bucket:%s", bucket), e);
+            }
+            throw new RuntimeException(String.format("Could not get the objects in paths from bucket:%s", bucket), e);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!missing.isEmpty()) {
+            throw new ConfigException(String.format("%d of paths are not found in bucket:%s, such as %s",
+                    missing.size(), bucket, missing.subList(0, Math.min(missing.size(), 10))));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the watermarks of the partitions if partition_depth or partition_pattern is set for incremental loading.
+     */
+    static Optional<PartitionWatermarks> getPartitionWatermarks(final PluginTask task) {
+        if (!task.getIncremental() || !task.getSources().isEmpty()) {
+            return Optional.empty();
+        }
+        return PartitionWatermarks.of(task, task.getPathPrefix().orElse(""));
+    }
+
+    /**
+     * Returns the index of the objects read by the recent runs if late_arrival_window is enabled for incremental loading.
+     */
+    static Optional<ProcessedIndex> getProcessedIndex(final PluginTask task) {
+        if (!task.getIncremental() || task.getLateArrivalWindow() <= 0 || !task.getSources().isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(ProcessedIndex.of(task, task.getLastPath()));
+    }
+
+    /**
+     * Returns the bucket of each source, which is referred by FileList#getSource.
+     */
+    static List<String> getBuckets(final PluginTask task) {
+        if (task.getSources().isEmpty()) {
+            return Collections.singletonList(task.getBucket());
+        }
+        final List<String> buckets = new ArrayList<>();
+        for (PluginTask.Source source : task.getSources()) {
+            buckets.add(source.getBucket().orElse(task.getBucket()));
+        }
+        return buckets;
+    }
+
+    private static FileList.Builder listFiles(final PluginTask task, final Storage client, final FileList.Builder files, final int source,
+                                              final String bucket, final String prefix, final String pathMatchPattern,
+                                              final Optional<String> lastPath, final String checkpointSuffix,
+                                              final Optional<ProcessedIndex> processed, final Optional<FileList> listed) {
+        FileList.Builder builder = files.source(source).pathMatchPattern(pathMatchPattern).checksums(task.getValidateChecksum());
+        Optional<String> startPath = lastPath;
+        if (listed.isPresent()) {
+            // keeps the files of the previous listing, and continues after them
+            builder.addAll(listed.get(), source);
+            startPath = listed.get().getLastPath(source, lastPath);
+        }
+        String lastKey = startPath.isPresent() ? base64Encode(startPath.get()) : "";
+
+        // list by the longest prefix that the filter requires
+        final String listingPrefix = builder.narrowPrefix(prefix);
+        final MetadataFilter metadataFilter = MetadataFilter.of(task);
+        final String fingerprint = String.join("\t", bucket, prefix, lastKey, pathMatchPattern, String.valueOf(task.getIncludeGlobs()),
+                String.valueOf(task.getIncludePatterns()), String.valueOf(task.getExcludeGlobs()), String.valueOf(task.getExcludePatterns()),
+                metadataFilter.toString(), task.getShardIndex() + "/" + task.getShardCount(), processed.map(ProcessedIndex::fingerprint).orElse(""));
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, checkpointSuffix, fingerprint)) {
+            Optional<String> resumedPageToken = checkpoint.restore(builder);
+            String pageToken = resumedPageToken.orElse(lastKey);
+            boolean hasNextPage = !resumedPageToken.isPresent() || !pageToken.isEmpty();
+            while (hasNextPage) {
+                // @see https://cloud.google.com/storage/docs/json_api/v1/objects/list
+                long pageNanos = System.nanoTime();
+                Page<Blob> page = RetryUtils.withRetry(task,
+                        RetryUtils.list(client, bucket, Storage.BlobListOption.prefix(listingPrefix), Storage.BlobListOption.pageToken(pageToken),
+                                metadataFilter.fields()));
+                long pageLatency = System.nanoTime() - pageNanos;
+                int objects = 0;
+                boolean exhausted = false;
+                List<String> names = new ArrayList<>();
+                List<Long> sizes = new ArrayList<>();
+                List<Integer> checksums = new ArrayList<>();
+                for (Blob blob : page.getValues()) {
+                    if (!builder.needsMore()) {
+                        // neither this nor the later objects are read
+                        exhausted = true;
+                        break;
+                    }
+                    objects++;
+                    int crc32c = blob.getCrc32c() != null ? ChecksumInputStream.decodeCrc32c(blob.getCrc32c()) : 0;
+                    if (metadataFilter.matches(blob) && !(processed.isPresent() && processed.get().contains(blob.getName()))
+                            && builder.add(blob.getName(), blob.getSize(), crc32c)) {
+                        names.add(blob.getName());
+                        sizes.add(blob.getSize());
+                        checksums.add(crc32c);
+                    }
+                    LOG.debug("filename: {}", blob.getName());
+                    if (!builder.mayMatchAfter(blob.getName())) {
+                        // this one may be end_path itself, which is read, but none of the later objects are
+                        exhausted = true;
+                        break;
+                    }
                 }
-                LOG.debug("filename: {}", blob.getName());
-                LOG.debug("updated: {}", blob.getUpdateTime());
+                Tracing.listPage(bucket, listingPrefix, objects, pageLatency);
+                pageToken = page.getNextPageToken();
+                hasNextPage = pageToken != null && !pageToken.isEmpty() && !task.getSampling() && !exhausted && builder.needsMore();
+                checkpoint.savePage(names, sizes, checksums, pageToken);
             }
+            checkpoint.complete();
         } catch (final RuntimeException e) {
-            if ((e instanceof StorageException) && ((StorageException) e).getCode() == 400) {
+            final Optional<StorageException> cause = RetryUtils.findStorageException(e);
+            if (isConfigError(cause)) {
                 throw new ConfigException(String.format("Files listing failed: bucket:%s, prefix:%s, last_path:%s", bucket, prefix, lastKey), e);
             }
+            throw new RuntimeException(String.format("Could not get file list from bucket:%s, prefix:%s", bucket, prefix), e);
+        }
+        return builder;
+    }
 
-            LOG.warn(String.format("Could not get file list from bucket:%s", bucket));
-            LOG.warn(e.getMessage());
+    // the credentials, the permissions, or the bucket are wrong, which no retry fixes, unlike 408 or 429
+    private static boolean isConfigError(final Optional<StorageException> cause) {
+        if (!cause.isPresent()) {
+            return false;
+        }
+        final int code = cause.get().getCode();
+        return code == 401 || code == 403 || code == 404;
+    }
+
+    private static <T> T getListing(final Future<T> listing) {
+        try {
+            return listing.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
         }
-        return builder.build();
     }
 
     // String nextToken = base64Encode(0x0a + ASCII character according to utf8EncodeLength position+ filePath);
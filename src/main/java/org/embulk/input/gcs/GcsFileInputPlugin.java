@@ -16,15 +16,20 @@
 
 package org.embulk.input.gcs;
 
+import com.google.cloud.storage.Storage;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.embulk.config.ConfigDiff;
 import org.embulk.config.ConfigException;
 import org.embulk.config.ConfigSource;
 import org.embulk.config.TaskReport;
 import org.embulk.config.TaskSource;
+import org.embulk.spi.Exec;
 import org.embulk.spi.FileInputPlugin;
 import org.embulk.spi.TransactionalFileInput;
 import org.embulk.util.config.ConfigMapper;
@@ -43,6 +48,9 @@ public class GcsFileInputPlugin implements FileInputPlugin {
     @Override
     public ConfigDiff transaction(final ConfigSource config, final FileInputPlugin.Control control) {
         PluginTask task = CONFIG_MAPPER.map(config, PluginTask.class);
+        task.setSharedAccessToken(Optional.empty());
+        task.setSharedAccessTokenExpiration(Optional.empty());
+        task.setWorkQueueId(Optional.empty());
 
         if (task.getP12KeyfileFullpath().isPresent()) {
             if (task.getP12Keyfile().isPresent()) {
@@ -65,28 +73,77 @@ public class GcsFileInputPlugin implements FileInputPlugin {
             }
         }
 
-        // @see https://cloud.google.com/storage/docs/objects#naming
-        if (task.getLastPath().isPresent()) {
-            if (task.getLastPath().get().getBytes(StandardCharsets.UTF_8).length >= 1025) {
-                throw new ConfigException("last_path is too long, which can contain a maximum of 1024 bytes encoded in UTF-8.");
+        checkLastPath(task.getLastPath());
+        AdaptiveChunkSize.of(task); // to validate min_chunk_size and max_chunk_size before listing
+        MemoryGovernor.configure(task); // applies max_buffer_memory to the JVM once per run, and validates it
+        final ObjectWaiter waiter = ObjectWaiter.of(task);
+        if (task.getAdaptiveConcurrency()) {
+            ConcurrencyLimiter.of(task); // to validate max_concurrent_requests
+        }
+
+        if (!task.getSources().isEmpty()) {
+            if (task.getPathPrefix().isPresent() || !task.getPathFiles().isEmpty()) {
+                throw new ConfigException("sources can't be used together with path_prefix or paths");
+            }
+            for (PluginTask.Source source : task.getSources()) {
+                checkLastPath(source.getLastPath());
+            }
+            if (task.getLateArrivalWindow() > 0) {
+                throw new ConfigException("late_arrival_window can't be used together with sources");
             }
         }
+        final Optional<PartitionWatermarks> partitions = PartitionWatermarks.of(task, task.getPathPrefix().orElse(""));
+        if (partitions.isPresent()) {
+            if (!task.getPathPrefix().isPresent()) {
+                throw new ConfigException("partition_depth and partition_pattern can be used only with path_prefix");
+            }
+            if (task.getLateArrivalWindow() > 0) {
+                throw new ConfigException("late_arrival_window can't be used together with partition_depth or partition_pattern");
+            }
+        }
+        if (PrefixTemplate.of(task, task.getPathPrefix()).isPresent() && partitions.isPresent()) {
+            throw new ConfigException("path_prefix_from can't be used together with partition_depth or partition_pattern");
+        }
+
+        if (task.getSampleBytes() < 0) {
+            throw new ConfigException(String.format("sample_bytes must not be negative, but %d", task.getSampleBytes()));
+        }
+        task.setSampling(Exec.isPreview() && task.getSampleBytes() > 0);
 
-        // list files recursively if path_prefix is specified
-        if (task.getPathPrefix().isPresent()) {
-            task.setFiles(GcsFileInput.listFiles(task));
+        // list files recursively if path_prefix or sources are specified
+        if (task.getPathPrefix().isPresent() || !task.getSources().isEmpty()) {
+            // the client is built once, even if the objects are listed again and again while waiting for new ones
+            final Storage client = AuthUtils.newClient(task);
+            if (waiter.isEnabled() && !Exec.isPreview()) {
+                task.setFiles(waiter.listFiles(listed -> GcsFileInput.listFiles(task, client, listed)));
+            } else {
+                task.setFiles(GcsFileInput.listFiles(task, client, Optional.empty()));
+            }
             if (task.getFiles().getTaskCount() == 0) {
-                logger.info("No file is found in the path(s) identified by path_prefix");
+                logger.info("No file is found in the path(s) identified by path_prefix or sources");
             }
         } else {
             if (task.getPathFiles().isEmpty()) {
                 throw new ConfigException("No file is found. Confirm paths option isn't empty");
             }
-            FileList.Builder builder = new FileList.Builder(config);
-            for (String file : task.getPathFiles()) {
-                builder.add(file, 1);
+            if (waiter.isEnabled()) {
+                throw new ConfigException("wait_timeout_seconds can't be used together with paths");
+            }
+            // the client verifies the credentials and the bucket once, instead of in each task
+            task.setFiles(GcsFileInput.lookupFiles(task, AuthUtils.newClient(task), new FileList.Builder(config)));
+        }
+        if (task.getValidateChecksum() && !task.getFiles().hasChecksums() && task.getFiles().getTaskCount() > 0) {
+            logger.warn("validate_checksum is ignored because the checksums are not available");
+        }
+        if (task.getShareAccessToken()) {
+            AuthUtils.shareAccessToken(task);
+        }
+        if (task.getWorkStealing()) {
+            // tasks of this transaction take files from the queue, which is registered only while they run
+            try (final WorkQueue queue = WorkQueue.register(task.getFiles().getFileCount())) {
+                task.setWorkQueueId(Optional.of(queue.getId()));
+                return resume(task.toTaskSource(), task.getFiles().getTaskCount(), control);
             }
-            task.setFiles(builder.build());
         }
         // number of processors is same with number of files
         return resume(task.toTaskSource(), task.getFiles().getTaskCount(), control);
@@ -104,12 +161,55 @@ public class GcsFileInputPlugin implements FileInputPlugin {
         ConfigDiff configDiff = CONFIG_MAPPER_FACTORY.newConfigDiff();
 
         if (task.getIncremental()) {
-            configDiff.set("last_path", task.getFiles().getLastPath(task.getLastPath()));
+            if (task.getSources().isEmpty()) {
+                final Optional<ProcessedIndex> processed = GcsFileInput.getProcessedIndex(task);
+                final Optional<PartitionWatermarks> partitions = GcsFileInput.getPartitionWatermarks(task);
+                Optional<String> lastPath = task.getFiles().getLastPath(task.getLastPath());
+                if (processed.isPresent()) {
+                    configDiff.set("processed_index", processed.get().add(task.getFiles().getAllFiles(), task.getLateArrivalWindow()).toConfig());
+                }
+                if (partitions.isPresent()) {
+                    configDiff.set("partition_watermarks", partitions.get().next(task.getFiles().getAllFiles()));
+                }
+                if (processed.isPresent() || partitions.isPresent()) {
+                    // the files may be only late ones, or ones of older partitions, sorted before last_path
+                    if (task.getLastPath().isPresent() && lastPath.isPresent() && FileList.compareNames(lastPath.get(), task.getLastPath().get()) < 0) {
+                        lastPath = task.getLastPath();
+                    }
+                }
+                configDiff.set("last_path", lastPath);
+            } else {
+                configDiff.set("sources", getNextSources(task));
+            }
         }
 
         return configDiff;
     }
 
+    // returns "sources" for the next execution, whose last_path is updated for each source
+    private static List<Map<String, Object>> getNextSources(final PluginTask task) {
+        final List<Map<String, Object>> sources = new ArrayList<>();
+        for (int i = 0; i < task.getSources().size(); i++) {
+            final PluginTask.Source source = task.getSources().get(i);
+            final Map<String, Object> next = new LinkedHashMap<>();
+            source.getBucket().ifPresent(bucket -> next.put("bucket", bucket));
+            next.put("path_prefix", source.getPathPrefix());
+            source.getPathMatchPattern().ifPresent(pattern -> next.put("path_match_pattern", pattern));
+            task.getFiles().getLastPath(i, source.getLastPath()).ifPresent(lastPath -> next.put("last_path", lastPath));
+            sources.add(next);
+        }
+        return sources;
+    }
+
+    // @see https://cloud.google.com/storage/docs/objects#naming
+    private static void checkLastPath(final Optional<String> lastPath) {
+        if (lastPath.isPresent()) {
+            if (lastPath.get().getBytes(StandardCharsets.UTF_8).length >= 1025) {
+                throw new ConfigException("last_path is too long, which can contain a maximum of 1024 bytes encoded in UTF-8.");
+            }
+        }
+    }
+
     @Override
     public void cleanup(
             final TaskSource taskSource,
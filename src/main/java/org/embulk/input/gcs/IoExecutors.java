@@ -0,0 +1,51 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors of the tasks blocking on I/O in the plugin, such as listing and computing checksums.
+ *
+ * This is the implementation for Java 8, which runs the tasks on a pool of daemon threads. The jar is a multi-release
+ * jar, and the implementation under META-INF/versions/21 runs them on virtual threads on Java 21 or later, so that
+ * thousands of blocking tasks don't need thousands of OS threads. Both have the same methods.
+ */
+final class IoExecutors {
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private IoExecutors() {
+    }
+
+    /**
+     * Returns an executor which runs at most {@code parallelism} tasks at once, on threads named after {@code name}.
+     */
+    static ExecutorService newExecutor(final String name, final int parallelism) {
+        final AtomicInteger count = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    final Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
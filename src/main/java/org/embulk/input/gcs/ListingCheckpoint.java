@@ -0,0 +1,194 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.gcs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the progress of an object listing into a local file so that an interrupted listing can resume
+ * from the last page that was listed successfully.
+ *
+ * The file is an append-only text file. The first line identifies the listing, followed by one line per
+ * listed object with its size and CRC32C, and one line with the next page token after each page. Objects that are not followed by
+ * a page token were written by an incomplete page, and they are listed again on resume.
+ * GCS object names never contain CR or LF, so they can be written as they are.
+ */
+class ListingCheckpoint implements AutoCloseable {
+    interface Task {
+        @Config("listing_checkpoint_file")
+        @ConfigDefault("null")
+        Optional<String> getListingCheckpointFile();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ListingCheckpoint.class);
+
+    private static final String HEADER = "h\t";
+    private static final String FILE = "f\t";
+    private static final String PAGE = "p\t";
+
+    private final Optional<Path> path;
+    private final String fingerprint;
+    private BufferedWriter writer;
+    // length of the file up to the last page token, or -1 if nothing was restored
+    private long restoredLength = -1;
+
+    private ListingCheckpoint(final Optional<Path> path, final String fingerprint) {
+        this.path = path;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Returns a checkpoint for the listing identified by {@code fingerprint}, or a no-op checkpoint if
+     * {@code listing_checkpoint_file} is not configured. Concurrent listings use their own {@code suffix}
+     * appended to the file name.
+     */
+    static ListingCheckpoint of(final Task task, final String suffix, final String fingerprint) {
+        return new ListingCheckpoint(task.getListingCheckpointFile().map(file -> Paths.get(file + suffix)), fingerprint.replace('\n', ' '));
+    }
+
+    /**
+     * Replays the objects recorded by a previous, interrupted listing into {@code builder}.
+     *
+     * @return the page token to continue the listing from, an empty string if the previous listing had
+     *     already reached its last page, or {@code Optional.empty()} if there is nothing to resume
+     */
+    Optional<String> restore(final FileList.Builder builder) {
+        if (!path.isPresent() || !Files.exists(path.get())) {
+            return Optional.empty();
+        }
+        try (final BufferedReader reader = Files.newBufferedReader(path.get(), StandardCharsets.UTF_8)) {
+            final String header = reader.readLine();
+            if (header == null || !header.equals(HEADER + fingerprint)) {
+                LOG.info("Ignoring the listing checkpoint {}, which was written by another listing", path.get());
+                return Optional.empty();
+            }
+
+            final List<String> pending = new ArrayList<>();
+            String pageToken = null;
+            int restored = 0;
+            long length = utf8Length(header) + 1;
+            long committedLength = length;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                length += utf8Length(line) + 1;
+                if (line.startsWith(FILE)) {
+                    pending.add(line);
+                } else if (line.startsWith(PAGE)) {
+                    for (String entry : pending) {
+                        final String[] fields = entry.split("\t", 4);
+                        builder.add(fields[3], Long.parseLong(fields[1]), Integer.parseInt(fields[2]));
+                    }
+                    restored += pending.size();
+                    pending.clear();
+                    pageToken = line.substring(PAGE.length());
+                    committedLength = length;
+                }
+            }
+            if (pageToken == null) {
+                return Optional.empty();
+            }
+            restoredLength = committedLength;
+            LOG.info("Resuming the listing from the checkpoint {} with {} objects already listed", path.get(), restored);
+            return Optional.of(pageToken);
+        } catch (final IOException | RuntimeException ex) {
+            LOG.warn(String.format("Could not read the listing checkpoint %s, listing from the beginning", path.get()), ex);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Appends the objects of a page that was listed successfully, followed by the token of the next page.
+     */
+    void savePage(final List<String> names, final List<Long> sizes, final List<Integer> checksums, final String nextPageToken) {
+        if (!path.isPresent()) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                writer = open();
+            }
+            for (int i = 0; i < names.size(); i++) {
+                writer.write(FILE + sizes.get(i) + "\t" + checksums.get(i) + "\t" + names.get(i) + "\n");
+            }
+            writer.write(PAGE + (nextPageToken == null ? "" : nextPageToken) + "\n");
+            writer.flush();
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(String.format("Could not write the listing checkpoint %s", path.get()), ex);
+        }
+    }
+
+    /**
+     * Removes the checkpoint once the listing has completed.
+     */
+    void complete() {
+        if (!path.isPresent()) {
+            return;
+        }
+        close();
+        try {
+            Files.deleteIfExists(path.get());
+        } catch (final IOException ex) {
+            LOG.warn(String.format("Could not delete the listing checkpoint %s", path.get()), ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (final IOException ex) {
+                LOG.warn(String.format("Could not close the listing checkpoint %s", path.get()), ex);
+            }
+            writer = null;
+        }
+    }
+
+    private BufferedWriter open() throws IOException {
+        if (restoredLength >= 0) {
+            // drop the objects of the page that was being written when the previous listing was interrupted
+            try (final FileChannel channel = FileChannel.open(path.get(), StandardOpenOption.WRITE)) {
+                channel.truncate(restoredLength);
+            }
+            return Files.newBufferedWriter(path.get(), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+        final BufferedWriter newWriter = Files.newBufferedWriter(path.get(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        newWriter.write(HEADER + fingerprint + "\n");
+        return newWriter;
+    }
+
+    private static long utf8Length(final String line) {
+        return line.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
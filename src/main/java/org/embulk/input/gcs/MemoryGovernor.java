@@ -0,0 +1,183 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import org.embulk.config.ConfigException;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the total size of the buffers that hold downloaded data in the JVM.
+ *
+ * A reader reserves the size of a buffer before filling it, and releases it when the buffer is no longer used. A reader
+ * doesn't wait when the budget is exhausted, but falls back to plain streaming, which needs no more than a small buffer.
+ * The usage is exposed as the MBean "org.embulk.input.gcs:type=MemoryGovernor".
+ */
+class MemoryGovernor {
+    interface Task {
+        // in bytes, defaults to a quarter of the max heap size
+        @Config("max_buffer_memory")
+        @ConfigDefault("null")
+        Optional<Long> getMaxBufferMemory();
+    }
+
+    public interface MemoryGovernorMBean {
+        long getLimit();
+
+        long getUsed();
+
+        long getPeak();
+
+        long getFallbacks();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoryGovernor.class);
+
+    private static final MemoryGovernor GLOBAL = new MemoryGovernor(Runtime.getRuntime().maxMemory() / 4);
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(new Usage(GLOBAL), MemoryGovernorMBean.class), new ObjectName("org.embulk.input.gcs:type=MemoryGovernor"));
+        } catch (final JMException | RuntimeException ex) {
+            // such as the plugin loaded again by another class loader
+            LOG.debug("Could not register the MBean of MemoryGovernor", ex);
+        }
+    }
+
+    private final long defaultLimit;
+    private long limit;
+    private boolean configured = false;
+    private long used = 0;
+    private long peak = 0;
+    private long fallbacks = 0;
+
+    MemoryGovernor(final long limit) {
+        setLimit(limit);
+        this.defaultLimit = limit;
+    }
+
+    /**
+     * Applies max_buffer_memory of {@code task} to the governor of the JVM, which is called once by the transaction of each run.
+     */
+    static MemoryGovernor configure(final Task task) {
+        GLOBAL.applyLimit(task.getMaxBufferMemory());
+        return GLOBAL;
+    }
+
+    /**
+     * Returns the governor of the JVM for a task. The limit is applied only if no transaction has configured the JVM,
+     * such as in an executor of another JVM, so that the tasks don't change it under the buffers reserved by each other.
+     */
+    static MemoryGovernor of(final Task task) {
+        GLOBAL.applyLimitIfUnset(task.getMaxBufferMemory());
+        return GLOBAL;
+    }
+
+    static MemoryGovernor global() {
+        return GLOBAL;
+    }
+
+    synchronized void applyLimit(final Optional<Long> maxBufferMemory) {
+        setLimit(maxBufferMemory.orElse(defaultLimit));
+        configured = true;
+    }
+
+    synchronized void applyLimitIfUnset(final Optional<Long> maxBufferMemory) {
+        if (!configured) {
+            applyLimit(maxBufferMemory);
+        }
+    }
+
+    synchronized void setLimit(final long limit) {
+        if (limit <= 0) {
+            throw new ConfigException(String.format("max_buffer_memory must be positive, but %d", limit));
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Reserves {@code bytes} if they fit in the budget.
+     *
+     * @return false if they don't, and the caller must not buffer them
+     */
+    synchronized boolean tryReserve(final long bytes) {
+        if (used + bytes > limit) {
+            if (fallbacks++ == 0) {
+                LOG.info("Download buffers reached max_buffer_memory {} bytes. Falling back to streaming with small buffers", limit);
+            }
+            return false;
+        }
+        used += bytes;
+        peak = Math.max(peak, used);
+        return true;
+    }
+
+    synchronized void release(final long bytes) {
+        used -= bytes;
+    }
+
+    synchronized long getLimit() {
+        return limit;
+    }
+
+    synchronized long getUsed() {
+        return used;
+    }
+
+    synchronized long getPeak() {
+        return peak;
+    }
+
+    synchronized long getFallbacks() {
+        return fallbacks;
+    }
+
+    private static class Usage implements MemoryGovernorMBean {
+        private final MemoryGovernor governor;
+
+        Usage(final MemoryGovernor governor) {
+            this.governor = governor;
+        }
+
+        @Override
+        public long getLimit() {
+            return governor.getLimit();
+        }
+
+        @Override
+        public long getUsed() {
+            return governor.getUsed();
+        }
+
+        @Override
+        public long getPeak() {
+            return governor.getPeak();
+        }
+
+        @Override
+        public long getFallbacks() {
+            return governor.getFallbacks();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Storage;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import org.embulk.config.ConfigException;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+
+/**
+ * Decides which listed objects are read by their metadata: size, update time and content type.
+ *
+ * Objects are checked while listing, so that the others are neither planned nor downloaded. Only the metadata
+ * fields needed by the filters and the plugin are requested to the list API.
+ */
+class MetadataFilter {
+    interface Task {
+        @Config("min_size")
+        @ConfigDefault("null")
+        Optional<Long> getMinSize();
+
+        @Config("max_size")
+        @ConfigDefault("null")
+        Optional<Long> getMaxSize();
+
+        // ISO 8601 date-time with an offset, such as "2026-10-01T00:00:00Z"
+        @Config("updated_after")
+        @ConfigDefault("null")
+        Optional<String> getUpdatedAfter();
+
+        @Config("updated_before")
+        @ConfigDefault("null")
+        Optional<String> getUpdatedBefore();
+
+        // such as "text/csv", or "text/*" for any subtype
+        @Config("content_types")
+        @ConfigDefault("[]")
+        List<String> getContentTypes();
+    }
+
+    private final long minSize;
+    private final long maxSize;
+    private final long updatedAfterMillis;
+    private final long updatedBeforeMillis;
+    private final List<String> contentTypes;
+    private final boolean withChecksums;
+
+    private MetadataFilter(final long minSize, final long maxSize, final long updatedAfterMillis, final long updatedBeforeMillis,
+                           final List<String> contentTypes, final boolean withChecksums) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.updatedAfterMillis = updatedAfterMillis;
+        this.updatedBeforeMillis = updatedBeforeMillis;
+        this.contentTypes = contentTypes;
+        this.withChecksums = withChecksums;
+    }
+
+    static MetadataFilter of(final PluginTask task) {
+        // empty objects are never read
+        final long minSize = Math.max(1, task.getMinSize().orElse(1L));
+        final long maxSize = task.getMaxSize().orElse(Long.MAX_VALUE);
+        if (minSize > maxSize) {
+            throw new ConfigException(String.format("min_size (%d) must not be greater than max_size (%d)", minSize, maxSize));
+        }
+        final long updatedAfter = task.getUpdatedAfter().map(time -> parse("updated_after", time)).orElse(Long.MIN_VALUE);
+        final long updatedBefore = task.getUpdatedBefore().map(time -> parse("updated_before", time)).orElse(Long.MAX_VALUE);
+        if (updatedAfter >= updatedBefore) {
+            throw new ConfigException("updated_after must be earlier than updated_before");
+        }
+        final List<String> contentTypes = new ArrayList<>();
+        for (String contentType : task.getContentTypes()) {
+            contentTypes.add(contentType.trim().toLowerCase(Locale.ENGLISH));
+        }
+        return new MetadataFilter(minSize, maxSize, updatedAfter, updatedBefore, contentTypes, task.getValidateChecksum());
+    }
+
+    /**
+     * Returns the fields to request to the list API, which are the fields checked by this filter and read by the plugin.
+     */
+    Storage.BlobListOption fields() {
+        final List<Storage.BlobField> fields = new ArrayList<>();
+        fields.add(Storage.BlobField.NAME);
+        fields.add(Storage.BlobField.SIZE);
+        if (withChecksums) {
+            fields.add(Storage.BlobField.CRC32C);
+        }
+        if (updatedAfterMillis != Long.MIN_VALUE || updatedBeforeMillis != Long.MAX_VALUE) {
+            fields.add(Storage.BlobField.UPDATED);
+        }
+        if (!contentTypes.isEmpty()) {
+            fields.add(Storage.BlobField.CONTENT_TYPE);
+        }
+        return Storage.BlobListOption.fields(fields.toArray(new Storage.BlobField[0]));
+    }
+
+    boolean matches(final Blob blob) {
+        final long size = blob.getSize() == null ? 0 : blob.getSize();
+        if (size < minSize || size > maxSize) {
+            return false;
+        }
+        if (updatedAfterMillis != Long.MIN_VALUE || updatedBeforeMillis != Long.MAX_VALUE) {
+            final Long updated = blob.getUpdateTime();
+            if (updated == null || updated < updatedAfterMillis || updated >= updatedBeforeMillis) {
+                return false;
+            }
+        }
+        return contentTypes.isEmpty() || matchesContentType(blob.getContentType());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size:[%d,%d],updated:[%d,%d),content_types:%s", minSize, maxSize, updatedAfterMillis, updatedBeforeMillis, contentTypes);
+    }
+
+    private boolean matchesContentType(final String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        // parameters such as "; charset=utf-8" are ignored
+        final int semicolon = contentType.indexOf(';');
+        final String mediaType = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ENGLISH);
+        for (String expected : contentTypes) {
+            if (expected.endsWith("/*") ? mediaType.startsWith(expected.substring(0, expected.length() - 1)) : mediaType.equals(expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long parse(final String name, final String time) {
+        try {
+            return OffsetDateTime.parse(time).toInstant().toEpochMilli();
+        } catch (final DateTimeParseException ex) {
+            throw new ConfigException(String.format("%s must be an ISO 8601 date-time with an offset, such as 2026-10-01T00:00:00Z, but '%s'", name, time), ex);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.embulk.config.ConfigException;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lists the objects again and again until enough new objects have arrived, or until the timeout.
+ *
+ * The first listing starts from last_path as usual, and each of the next ones continues from the files of the previous one,
+ * so that it costs only the objects which have arrived since then. The waiting ends as soon as the listed objects reach
+ * wait_min_files and wait_min_bytes. The interval between listings
+ * is doubled while no new object appears, and it is reset when some appear.
+ */
+class ObjectWaiter {
+    interface Task {
+        // waits only if set
+        @Config("wait_timeout_seconds")
+        @ConfigDefault("null")
+        Optional<Long> getWaitTimeoutSeconds();
+
+        @Config("wait_min_files")
+        @ConfigDefault("1")
+        int getWaitMinFiles();
+
+        @Config("wait_min_bytes")
+        @ConfigDefault("0")
+        long getWaitMinBytes();
+
+        @Config("wait_initial_interval_millis")
+        @ConfigDefault("1000")
+        long getWaitInitialIntervalMillis();
+
+        @Config("wait_max_interval_millis")
+        @ConfigDefault("60000")
+        long getWaitMaxIntervalMillis();
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObjectWaiter.class);
+
+    private final Optional<Long> timeoutMillis;
+    private final int minFiles;
+    private final long minBytes;
+    private final long initialIntervalMillis;
+    private final long maxIntervalMillis;
+
+    ObjectWaiter(final Optional<Long> timeoutMillis, final int minFiles, final long minBytes, final long initialIntervalMillis,
+            final long maxIntervalMillis) {
+        if (initialIntervalMillis <= 0 || initialIntervalMillis > maxIntervalMillis) {
+            throw new ConfigException(String.format(
+                    "wait_initial_interval_millis must be positive and not greater than wait_max_interval_millis, but %d and %d",
+                    initialIntervalMillis, maxIntervalMillis));
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.minFiles = minFiles;
+        this.minBytes = minBytes;
+        this.initialIntervalMillis = initialIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+    }
+
+    static ObjectWaiter of(final Task task) {
+        return new ObjectWaiter(task.getWaitTimeoutSeconds().map(TimeUnit.SECONDS::toMillis), task.getWaitMinFiles(), task.getWaitMinBytes(),
+                task.getWaitInitialIntervalMillis(), task.getWaitMaxIntervalMillis());
+    }
+
+    boolean isEnabled() {
+        return timeoutMillis.isPresent();
+    }
+
+    /**
+     * Returns the files listed by {@code lister} once they are enough, or the files listed last at the timeout.
+     *
+     * {@code lister} is given the files of the previous listing, or {@code Optional.empty()} first, and returns them with the
+     * new files.
+     */
+    FileList listFiles(final Function<Optional<FileList>, FileList> lister) {
+        FileList files = lister.apply(Optional.empty());
+        if (!isEnabled()) {
+            return files;
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis.get());
+        long interval = initialIntervalMillis;
+        while (!isEnough(files)) {
+            final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                LOG.info("Timed out waiting for new objects, with {} objects of {} bytes", files.getFileCount(), files.getTotalSize());
+                return files;
+            }
+            LOG.info("Found {} new objects of {} bytes. Listing again after {} ms", files.getFileCount(), files.getTotalSize(),
+                    Math.min(interval, remaining));
+            try {
+                Thread.sleep(Math.min(interval, remaining));
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for new objects", ex);
+            }
+            final int previousCount = files.getFileCount();
+            files = lister.apply(Optional.of(files));
+            interval = files.getFileCount() > previousCount ? initialIntervalMillis : Math.min(interval * 2, maxIntervalMillis);
+        }
+        return files;
+    }
+
+    private boolean isEnough(final FileList files) {
+        return files.getFileCount() >= minFiles && files.getTotalSize() >= minBytes;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.embulk.config.ConfigException;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+
+/**
+ * Keeps the progress of incremental loading for each partition of hive-style layouts like
+ * {@code events/dt=2026-10-16/hour=07/}, where several partitions keep receiving objects at the same time.
+ *
+ * A partition is the beginning of an object name, up to the partition_depth-th "/" after path_prefix, or the part
+ * matched by partition_pattern. The watermark of a partition is the last object read from it. The next run lists each
+ * partition from its own watermark, and the latest one from its watermark to the end of path_prefix so that new
+ * partitions are found. Only the latest partition_retention partitions are kept, and the older ones are not listed again.
+ */
+class PartitionWatermarks {
+    interface Task {
+        @Config("partition_depth")
+        @ConfigDefault("null")
+        Optional<Integer> getPartitionDepth();
+
+        @Config("partition_pattern")
+        @ConfigDefault("null")
+        Optional<String> getPartitionPattern();
+
+        // number of the latest partitions to keep listing
+        @Config("partition_retention")
+        @ConfigDefault("24")
+        int getPartitionRetention();
+
+        // set by the ConfigDiff of the last run, not by users
+        @Config("partition_watermarks")
+        @ConfigDefault("{}")
+        Map<String, String> getPartitionWatermarks();
+    }
+
+    /**
+     * A prefix to list, and the name to list after.
+     */
+    static class Listing {
+        private final String prefix;
+        private final Optional<String> lastPath;
+
+        Listing(final String prefix, final Optional<String> lastPath) {
+            this.prefix = prefix;
+            this.lastPath = lastPath;
+        }
+
+        String getPrefix() {
+            return prefix;
+        }
+
+        Optional<String> getLastPath() {
+            return lastPath;
+        }
+    }
+
+    private final String pathPrefix;
+    private final int depth;
+    private final Optional<Pattern> pattern;
+    private final int retention;
+    private final TreeMap<String, String> watermarks;
+
+    PartitionWatermarks(final String pathPrefix, final int depth, final Optional<Pattern> pattern, final int retention,
+            final Map<String, String> watermarks) {
+        this.pathPrefix = pathPrefix;
+        this.depth = depth;
+        this.pattern = pattern;
+        this.retention = retention;
+        this.watermarks = new TreeMap<>(FileList.NAME_ORDER);
+        this.watermarks.putAll(watermarks);
+    }
+
+    /**
+     * Returns the watermarks of the last run if partition_depth or partition_pattern is set.
+     */
+    static Optional<PartitionWatermarks> of(final Task task, final String pathPrefix) {
+        if (!task.getPartitionDepth().isPresent() && !task.getPartitionPattern().isPresent()) {
+            return Optional.empty();
+        }
+        if (task.getPartitionDepth().isPresent() && task.getPartitionPattern().isPresent()) {
+            throw new ConfigException("Setting both partition_depth and partition_pattern is invalid");
+        }
+        if (task.getPartitionDepth().isPresent() && task.getPartitionDepth().get() <= 0) {
+            throw new ConfigException(String.format("partition_depth must be positive, but %d", task.getPartitionDepth().get()));
+        }
+        if (task.getPartitionRetention() <= 0) {
+            throw new ConfigException(String.format("partition_retention must be positive, but %d", task.getPartitionRetention()));
+        }
+        final Optional<Pattern> pattern;
+        try {
+            pattern = task.getPartitionPattern().map(Pattern::compile);
+        } catch (final PatternSyntaxException ex) {
+            throw new ConfigException(String.format("partition_pattern '%s' is invalid", task.getPartitionPattern().get()), ex);
+        }
+        return Optional.of(new PartitionWatermarks(pathPrefix, task.getPartitionDepth().orElse(0), pattern,
+                task.getPartitionRetention(), task.getPartitionWatermarks()));
+    }
+
+    /**
+     * Returns the partition of {@code name}, or {@code Optional.empty()} if the name is not in a partition.
+     */
+    Optional<String> partitionOf(final String name) {
+        if (pattern.isPresent()) {
+            final Matcher matcher = pattern.get().matcher(name);
+            if (matcher.lookingAt() && matcher.end() > pathPrefix.length()) {
+                return Optional.of(name.substring(0, matcher.end()));
+            }
+            return Optional.empty();
+        }
+        int end = pathPrefix.length();
+        for (int level = 0; level < depth; level++) {
+            end = name.indexOf('/', end) + 1;
+            if (end == 0) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(name.substring(0, end));
+    }
+
+    /**
+     * Returns the listings of the next run in the order of names: the partitions older than the latest one from their
+     * watermarks, followed by path_prefix from the latest watermark or {@code lastPath}, whichever is larger.
+     */
+    List<Listing> getListings(final Optional<String> lastPath) {
+        Optional<String> latest = lastPath;
+        for (String watermark : watermarks.values()) {
+            if (!latest.isPresent() || FileList.compareNames(latest.get(), watermark) < 0) {
+                latest = Optional.of(watermark);
+            }
+        }
+        final Optional<String> latestPartition = latest.flatMap(this::partitionOf);
+        final List<Listing> listings = new ArrayList<>();
+        for (Map.Entry<String, String> entry : watermarks.entrySet()) {
+            if (!latestPartition.isPresent() || !latestPartition.get().equals(entry.getKey())) {
+                listings.add(new Listing(entry.getKey(), Optional.of(entry.getValue())));
+            }
+        }
+        listings.add(new Listing(pathPrefix, latest));
+        return listings;
+    }
+
+    /**
+     * Returns the watermarks advanced by {@code read}, without the partitions older than the latest partition_retention ones,
+     * as a value of ConfigDiff.
+     */
+    Map<String, String> next(final Collection<String> read) {
+        final TreeMap<String, String> next = new TreeMap<>(watermarks);
+        for (String name : read) {
+            final Optional<String> partition = partitionOf(name);
+            if (partition.isPresent()) {
+                next.merge(partition.get(), name, (a, b) -> FileList.compareNames(a, b) < 0 ? b : a);
+            }
+        }
+        while (next.size() > retention) {
+            next.pollFirstEntry();
+        }
+        return next;
+    }
+}
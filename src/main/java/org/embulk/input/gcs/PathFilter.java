@@ -0,0 +1,392 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.embulk.config.ConfigException;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+
+/**
+ * Decides which object paths are read, by path_match_pattern, and include and exclude lists of globs and regexps.
+ *
+ * A path is read if it matches path_match_pattern, any of the includes if there is any, and none of the excludes,
+ * if it is not sorted after end_path, and if it is assigned to shard_index when shard_count is more than 1.
+ * Each glob or regexp is checked by its literal prefix and suffix first, and by the regexp only if they match and
+ * don't decide the result alone. The longest literal prefix required by the includes is used to narrow the listing, and
+ * the literal prefixes and end_path tell when the listing can stop because no later path can match.
+ *
+ * Instances are immutable, so they can be used by threads without locking.
+ */
+class PathFilter {
+    interface Task {
+        // globs matching the whole path: "*" and "?" don't match "/", "**" matches any characters, and "{a,b}" matches either
+        @Config("include_globs")
+        @ConfigDefault("[]")
+        List<String> getIncludeGlobs();
+
+        // regexps matching a part of the path, as path_match_pattern does
+        @Config("include_patterns")
+        @ConfigDefault("[]")
+        List<String> getIncludePatterns();
+
+        @Config("exclude_globs")
+        @ConfigDefault("[]")
+        List<String> getExcludeGlobs();
+
+        @Config("exclude_patterns")
+        @ConfigDefault("[]")
+        List<String> getExcludePatterns();
+
+        // reads only the paths assigned to this shard by a hash of the path, to split objects between processes
+        @Config("shard_index")
+        @ConfigDefault("0")
+        int getShardIndex();
+
+        @Config("shard_count")
+        @ConfigDefault("1")
+        int getShardCount();
+
+        // the last path to read, inclusive
+        @Config("end_path")
+        @ConfigDefault("null")
+        Optional<String> getEndPath();
+    }
+
+    private static final String REGEX_META = "\\.[]{}()*+?^$|";
+
+    private final Matcher pathMatchPattern;
+    private final List<Matcher> includes;
+    private final List<Matcher> excludes;
+    private final int shardIndex;
+    private final int shardCount;
+    private final Optional<String> endPath;
+
+    private PathFilter(final Matcher pathMatchPattern, final List<Matcher> includes, final List<Matcher> excludes,
+                       final int shardIndex, final int shardCount, final Optional<String> endPath) {
+        this.pathMatchPattern = pathMatchPattern;
+        this.includes = includes;
+        this.excludes = excludes;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+        this.endPath = endPath;
+    }
+
+    static PathFilter of(final String pathMatchPattern) {
+        return new PathFilter(Matcher.ofPattern(pathMatchPattern), Collections.emptyList(), Collections.emptyList(), 0, 1, Optional.empty());
+    }
+
+    static PathFilter of(final String pathMatchPattern, final Task task) {
+        final List<Matcher> includes = new ArrayList<>();
+        task.getIncludeGlobs().forEach(glob -> includes.add(Matcher.ofGlob(glob)));
+        task.getIncludePatterns().forEach(pattern -> includes.add(Matcher.ofPattern(pattern)));
+        final List<Matcher> excludes = new ArrayList<>();
+        task.getExcludeGlobs().forEach(glob -> excludes.add(Matcher.ofGlob(glob)));
+        task.getExcludePatterns().forEach(pattern -> excludes.add(Matcher.ofPattern(pattern)));
+        if (task.getShardCount() < 1 || task.getShardIndex() < 0 || task.getShardIndex() >= task.getShardCount()) {
+            throw new ConfigException(String.format("shard_index must be from 0 to shard_count - 1, but shard_index is %d and shard_count is %d",
+                    task.getShardIndex(), task.getShardCount()));
+        }
+        return new PathFilter(Matcher.ofPattern(pathMatchPattern), Collections.unmodifiableList(includes), Collections.unmodifiableList(excludes),
+                task.getShardIndex(), task.getShardCount(), task.getEndPath());
+    }
+
+    /**
+     * Returns the shard of {@code path}, by MurmurHash3 of its UTF-8 bytes, which is the same on any JVM.
+     */
+    static int getShard(final String path, final int shardCount) {
+        return Math.floorMod(Hashing.murmur3_32().hashString(path, StandardCharsets.UTF_8).asInt(), shardCount);
+    }
+
+    /**
+     * Returns a filter with the same includes and excludes, and another path_match_pattern.
+     */
+    PathFilter withPathMatchPattern(final String pattern) {
+        return new PathFilter(Matcher.ofPattern(pattern), includes, excludes, shardIndex, shardCount, endPath);
+    }
+
+    boolean matches(final String path) {
+        if (endPath.isPresent() && FileList.compareNames(path, endPath.get()) > 0) {
+            return false;
+        }
+        if (!pathMatchPattern.matches(path)) {
+            return false;
+        }
+        if (!includes.isEmpty()) {
+            boolean included = false;
+            for (Matcher include : includes) {
+                if (include.matches(path)) {
+                    included = true;
+                    break;
+                }
+            }
+            if (!included) {
+                return false;
+            }
+        }
+        for (Matcher exclude : excludes) {
+            if (exclude.matches(path)) {
+                return false;
+            }
+        }
+        return shardCount == 1 || getShard(path, shardCount) == shardIndex;
+    }
+
+    /**
+     * Returns false if no path sorted after {@code path} can match, that is, {@code path} is not before end_path, or it is
+     * sorted after all the paths with the literal prefix of path_match_pattern, or of every include.
+     */
+    boolean mayMatchAfter(final String path) {
+        if (endPath.isPresent() && FileList.compareNames(path, endPath.get()) >= 0) {
+            return false;
+        }
+        if (pathMatchPattern.isPassed(path)) {
+            return false;
+        }
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (Matcher include : includes) {
+            if (!include.isPassed(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the prefix to list objects by, which is {@code prefix} or a longer one required by path_match_pattern and the includes.
+     */
+    String narrowPrefix(final String prefix) {
+        String narrowed = narrow(prefix, pathMatchPattern.prefix);
+        if (!includes.isEmpty()) {
+            String common = null;
+            for (Matcher include : includes) {
+                common = common == null ? include.prefix : commonPrefix(common, include.prefix);
+            }
+            narrowed = narrow(narrowed, common);
+        }
+        return narrowed;
+    }
+
+    // returns the longer one if one of them starts with the other, that is, both of them can be satisfied
+    private static String narrow(final String prefix, final String required) {
+        return required.startsWith(prefix) ? required : prefix;
+    }
+
+    private static String commonPrefix(final String a, final String b) {
+        int i = 0;
+        while (i < a.length() && i < b.length() && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return a.substring(0, i);
+    }
+
+    /**
+     * Matches a path by its literal prefix and suffix, and by the regexp unless they are enough.
+     */
+    private static class Matcher {
+        private final String prefix;
+        private final String suffix;
+        // the regexp to find, or null if the prefix and the suffix decide the result
+        private final Pattern pattern;
+
+        private Matcher(final String prefix, final String suffix, final Pattern pattern) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.pattern = pattern;
+        }
+
+        boolean matches(final String path) {
+            if (!path.startsWith(prefix) || !path.endsWith(suffix)) {
+                return false;
+            }
+            return pattern == null || pattern.matcher(path).find();
+        }
+
+        // returns true if the paths with the literal prefix are all sorted before path
+        boolean isPassed(final String path) {
+            return !prefix.isEmpty() && FileList.compareNames(path, prefix) > 0 && !path.startsWith(prefix);
+        }
+
+        /**
+         * Extracts the literal prefix of a regexp anchored by "^", and the literal suffix of one anchored by "$".
+         * Regexps with "|" or flags are not analyzed, and they are always checked by the regexp.
+         */
+        static Matcher ofPattern(final String regexp) {
+            final Pattern pattern = compile(regexp);
+            if (regexp.indexOf('|') >= 0 || regexp.contains("(?")) {
+                return new Matcher("", "", pattern);
+            }
+
+            final boolean anchoredBegin = regexp.startsWith("^");
+            final StringBuilder prefix = new StringBuilder();
+            int begin = anchoredBegin ? 1 : 0;
+            while (anchoredBegin && begin < regexp.length()) {
+                final int literal = literalAt(regexp, begin);
+                final int next = begin + (regexp.charAt(begin) == '\\' ? 2 : 1);
+                // an atom followed by a quantifier is not a literal
+                if (literal < 0 || (next < regexp.length() && "*+?{".indexOf(regexp.charAt(next)) >= 0)) {
+                    break;
+                }
+                prefix.append((char) literal);
+                begin = next;
+            }
+
+            int end = regexp.length();
+            final boolean anchoredEnd = end > begin && regexp.charAt(end - 1) == '$' && !isEscaped(regexp, end - 1);
+            final StringBuilder suffix = new StringBuilder();
+            if (anchoredEnd) {
+                end--;
+                while (end > begin) {
+                    final int start = isEscaped(regexp, end - 1) ? end - 2 : end - 1;
+                    final int literal = start >= begin ? literalAt(regexp, start) : -1;
+                    if (literal < 0) {
+                        break;
+                    }
+                    suffix.insert(0, (char) literal);
+                    end = start;
+                }
+            }
+
+            // "^literal" and "literal$" are decided by the prefix or the suffix alone
+            final boolean decided = anchoredBegin && !anchoredEnd && begin == regexp.length()
+                    || !anchoredBegin && anchoredEnd && end == 0;
+            return new Matcher(prefix.toString(), suffix.toString(), decided ? null : pattern);
+        }
+
+        /**
+         * Converts a glob matching the whole path into a regexp, and extracts its literal prefix and suffix.
+         */
+        static Matcher ofGlob(final String glob) {
+            final StringBuilder regexp = new StringBuilder("^");
+            // characters out of wildcards and braces
+            final StringBuilder literal = new StringBuilder();
+            int prefixLength = -1;
+            int suffixStart = 0;
+            int depth = 0;
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                boolean wildcard = true;
+                switch (c) {
+                    case '*':
+                        if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                            regexp.append(".*");
+                            i++;
+                        } else {
+                            regexp.append("[^/]*");
+                        }
+                        break;
+                    case '?':
+                        regexp.append("[^/]");
+                        break;
+                    case '[':
+                        final int close = glob.indexOf(']', i + 2);
+                        if (close < 0) {
+                            throw new ConfigException(String.format("Invalid glob '%s': '[' is not closed", glob));
+                        }
+                        final String set = glob.substring(i + 1, close);
+                        regexp.append('[').append(set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+                        i = close;
+                        break;
+                    case '{':
+                        regexp.append("(?:");
+                        depth++;
+                        break;
+                    case '}':
+                        if (depth > 0) {
+                            regexp.append(')');
+                            depth--;
+                        } else {
+                            regexp.append("\\}");
+                            wildcard = false;
+                        }
+                        break;
+                    case ',':
+                        regexp.append(depth > 0 ? '|' : ',');
+                        wildcard = false;
+                        break;
+                    case '\\':
+                        if (i + 1 < glob.length()) {
+                            c = glob.charAt(++i);
+                        }
+                        regexp.append(quote(c));
+                        wildcard = false;
+                        break;
+                    default:
+                        regexp.append(quote(c));
+                        wildcard = false;
+                        break;
+                }
+                if (wildcard || depth > 0) {
+                    if (prefixLength < 0) {
+                        prefixLength = literal.length();
+                    }
+                    suffixStart = literal.length();
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (depth != 0) {
+                throw new ConfigException(String.format("Invalid glob '%s': '{' is not closed", glob));
+            }
+            regexp.append('$');
+            final String literals = literal.toString();
+            if (prefixLength < 0) {
+                return new Matcher(literals, "", compile(regexp.toString()));
+            }
+            return new Matcher(literals.substring(0, prefixLength), literals.substring(suffixStart), compile(regexp.toString()));
+        }
+
+        private static String quote(final char c) {
+            return REGEX_META.indexOf(c) >= 0 ? "\\" + c : String.valueOf(c);
+        }
+
+        private static Pattern compile(final String regexp) {
+            try {
+                return Pattern.compile(regexp);
+            } catch (final IllegalArgumentException ex) {
+                throw new ConfigException(String.format("Invalid regexp '%s'", regexp), ex);
+            }
+        }
+
+        // returns the literal character at index, which may be escaped by a backslash, or -1 if it is not a literal
+        private static int literalAt(final String regexp, final int index) {
+            final char c = regexp.charAt(index);
+            if (c == '\\') {
+                if (index + 1 < regexp.length() && REGEX_META.indexOf(regexp.charAt(index + 1)) >= 0) {
+                    return regexp.charAt(index + 1);
+                }
+                return -1;
+            }
+            return REGEX_META.indexOf(c) >= 0 ? -1 : c;
+        }
+
+        private static boolean isEscaped(final String regexp, final int index) {
+            int backslashes = 0;
+            for (int i = index - 1; i >= 0 && regexp.charAt(i) == '\\'; i--) {
+                backslashes++;
+            }
+            return backslashes % 2 == 1;
+        }
+    }
+}
@@ -22,7 +22,29 @@ import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
 import org.embulk.util.config.Task;
 
-public interface PluginTask extends Task, AuthUtils.Task, FileList.Task, RetryUtils.Task {
+public interface PluginTask extends Task, AdaptiveChunkSize.Task, AuthUtils.Task, ChecksumInputStream.Task, ConcurrencyLimiter.Task, FileList.Task,
+        ListingCheckpoint.Task, MemoryGovernor.Task, MetadataFilter.Task, ObjectWaiter.Task, PartitionWatermarks.Task, PrefixTemplate.Task,
+        ProcessedIndex.Task, RetryUtils.Task, WorkQueue.Task {
+    // an element of "sources" to list in addition to the others in the same transaction
+    interface Source extends Task {
+        // defaults to "bucket" of the plugin
+        @Config("bucket")
+        @ConfigDefault("null")
+        Optional<String> getBucket();
+
+        @Config("path_prefix")
+        String getPathPrefix();
+
+        // defaults to "path_match_pattern" of the plugin
+        @Config("path_match_pattern")
+        @ConfigDefault("null")
+        Optional<String> getPathMatchPattern();
+
+        @Config("last_path")
+        @ConfigDefault("null")
+        Optional<String> getLastPath();
+    }
+
     @Config("bucket")
     String getBucket();
 
@@ -46,6 +68,20 @@ public interface PluginTask extends Task, AuthUtils.Task, FileList.Task, RetryUt
     @ConfigDefault("[]")
     List<String> getPathFiles();
 
+    @Config("sources")
+    @ConfigDefault("[]")
+    List<Source> getSources();
+
+    // bytes read from the beginning of each object in preview and guess, or 0 to read the whole objects
+    @Config("sample_bytes")
+    @ConfigDefault("1048576")
+    int getSampleBytes();
+
+    // task-only, set by the transaction, true in preview and guess
+    boolean getSampling();
+
+    void setSampling(boolean sampling);
+
     FileList getFiles();
 
     void setFiles(FileList files);
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.embulk.config.ConfigException;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+
+/**
+ * Expands a path_prefix with time fields like {@code logs/%Y/%m/%d/} into the exact prefixes of a time range, so that
+ * only the objects of the range are listed.
+ *
+ * The fields are %Y (year), %m (month), %d (day), %H (hour), and %M (minute), and %% is a literal "%". The range starts
+ * at path_prefix_from, and ends before path_prefix_to, which defaults to the current time in UTC. The prefixes are made
+ * for each unit of the smallest field in the template, in the order of time, which is the order of names as long as the
+ * fields are zero-padded.
+ */
+class PrefixTemplate {
+    interface Task {
+        @Config("path_prefix_from")
+        @ConfigDefault("null")
+        Optional<String> getPathPrefixFrom();
+
+        @Config("path_prefix_to")
+        @ConfigDefault("null")
+        Optional<String> getPathPrefixTo();
+    }
+
+    // a year of hours, or a week of minutes, which are listed by a few threads at a time, and finished one by one
+    static final int MAX_PREFIXES = 10080;
+
+    private final String template;
+    private final ChronoUnit unit;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+
+    PrefixTemplate(final String template, final LocalDateTime from, final LocalDateTime to) {
+        this.template = template;
+        this.unit = getUnit(template);
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Returns the template if path_prefix_from is set, or {@code Optional.empty()} to list path_prefix as it is.
+     */
+    static Optional<PrefixTemplate> of(final Task task, final Optional<String> pathPrefix) {
+        if (!task.getPathPrefixFrom().isPresent()) {
+            if (task.getPathPrefixTo().isPresent()) {
+                throw new ConfigException("path_prefix_to can't be used without path_prefix_from");
+            }
+            return Optional.empty();
+        }
+        if (!pathPrefix.isPresent()) {
+            throw new ConfigException("path_prefix_from can be used only with path_prefix");
+        }
+        final LocalDateTime from = parse("path_prefix_from", task.getPathPrefixFrom().get());
+        final LocalDateTime to = task.getPathPrefixTo().isPresent()
+                ? parse("path_prefix_to", task.getPathPrefixTo().get()) : LocalDateTime.now(ZoneOffset.UTC);
+        return Optional.of(new PrefixTemplate(pathPrefix.get(), from, to));
+    }
+
+    /**
+     * Returns the prefixes of the range without duplicates, in the order of names.
+     */
+    List<String> expand() {
+        final List<String> prefixes = new ArrayList<>();
+        LocalDateTime time = truncate(from);
+        while (time.isBefore(to)) {
+            final String prefix = format(time);
+            if (prefixes.isEmpty() || !prefixes.get(prefixes.size() - 1).equals(prefix)) {
+                if (prefixes.size() >= MAX_PREFIXES) {
+                    throw new ConfigException(String.format("path_prefix '%s' expands into more than %d prefixes between %s and %s",
+                            template, MAX_PREFIXES, from, to));
+                }
+                prefixes.add(prefix);
+            }
+            time = time.plus(1, unit);
+        }
+        return prefixes;
+    }
+
+    private String format(final LocalDateTime time) {
+        final StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < template.length(); i++) {
+            final char c = template.charAt(i);
+            if (c != '%') {
+                prefix.append(c);
+                continue;
+            }
+            switch (template.charAt(++i)) {
+                case 'Y':
+                    prefix.append(String.format("%04d", time.getYear()));
+                    break;
+                case 'm':
+                    prefix.append(String.format("%02d", time.getMonthValue()));
+                    break;
+                case 'd':
+                    prefix.append(String.format("%02d", time.getDayOfMonth()));
+                    break;
+                case 'H':
+                    prefix.append(String.format("%02d", time.getHour()));
+                    break;
+                case 'M':
+                    prefix.append(String.format("%02d", time.getMinute()));
+                    break;
+                default: // '%', validated by getUnit
+                    prefix.append('%');
+                    break;
+            }
+        }
+        return prefix.toString();
+    }
+
+    private LocalDateTime truncate(final LocalDateTime time) {
+        switch (unit) {
+            case YEARS:
+                return time.toLocalDate().withDayOfYear(1).atStartOfDay();
+            case MONTHS:
+                return time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+            default:
+                return time.truncatedTo(unit);
+        }
+    }
+
+    // returns the smallest unit of the fields in the template
+    private static ChronoUnit getUnit(final String template) {
+        ChronoUnit unit = null;
+        for (int i = 0; i < template.length(); i++) {
+            if (template.charAt(i) != '%') {
+                continue;
+            }
+            final ChronoUnit field;
+            switch (i + 1 < template.length() ? template.charAt(++i) : ' ') {
+                case 'Y':
+                    field = ChronoUnit.YEARS;
+                    break;
+                case 'm':
+                    field = ChronoUnit.MONTHS;
+                    break;
+                case 'd':
+                    field = ChronoUnit.DAYS;
+                    break;
+                case 'H':
+                    field = ChronoUnit.HOURS;
+                    break;
+                case 'M':
+                    field = ChronoUnit.MINUTES;
+                    break;
+                case '%':
+                    continue;
+                default:
+                    throw new ConfigException(String.format(
+                            "path_prefix '%s' contains an unknown field. Only %%Y, %%m, %%d, %%H, %%M, and %%%% are available", template));
+            }
+            if (unit == null || field.compareTo(unit) < 0) {
+                unit = field;
+            }
+        }
+        if (unit == null) {
+            throw new ConfigException(String.format("path_prefix '%s' contains no time field, though path_prefix_from is set", template));
+        }
+        return unit;
+    }
+
+    // accepts "2026-10-16", "2026-10-16 07:00:00", and "2026-10-16T07:00:00"
+    private static LocalDateTime parse(final String name, final String value) {
+        try {
+            if (value.length() <= 10) {
+                return LocalDate.parse(value).atStartOfDay();
+            }
+            return LocalDateTime.parse(value.replace(' ', 'T'));
+        } catch (final DateTimeParseException ex) {
+            throw new ConfigException(String.format("%s '%s' is not a date or a date-time like '2026-10-16 07:00:00'", name, value), ex);
+        }
+    }
+}
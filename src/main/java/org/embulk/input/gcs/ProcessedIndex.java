@@ -0,0 +1,193 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+
+/**
+ * Remembers the objects read by the recent runs of incremental loading, so that an object which arrives late with a name
+ * sorted before last_path is still read by the next run.
+ *
+ * The index consists of a boundary, up to which every object is taken as read, and the names of the objects read after the
+ * boundary, up to late_arrival_window of them. The next listing starts from the boundary instead of last_path, and skips the
+ * names in the index. When there are more names than the window, the smallest ones are dropped, and the boundary advances
+ * to the largest dropped one, so an object arriving later than that is still skipped.
+ *
+ * The names are front-coded and gzipped in "processed_index" of the ConfigDiff, which costs a few bytes per name for
+ * names sharing long prefixes.
+ */
+class ProcessedIndex {
+    interface Task {
+        // number of the latest objects to remember, or 0 not to remember any
+        @Config("late_arrival_window")
+        @ConfigDefault("0")
+        int getLateArrivalWindow();
+
+        // set by the ConfigDiff of the last run, not by users
+        @Config("processed_index")
+        @ConfigDefault("null")
+        Optional<ProcessedIndex> getProcessedIndex();
+    }
+
+    private final Optional<String> boundary;
+    private final NavigableSet<String> names;
+
+    ProcessedIndex(final Optional<String> boundary, final NavigableSet<String> names) {
+        this.boundary = boundary;
+        this.names = names;
+    }
+
+    @JsonCreator
+    public ProcessedIndex(@JsonProperty("boundary") final Optional<String> boundary, @JsonProperty("names") final byte[] names) {
+        this(boundary, decode(names));
+    }
+
+    /**
+     * Returns the index of the last run, or an index whose boundary is {@code lastPath} on the first run with the window.
+     */
+    static ProcessedIndex of(final Task task, final Optional<String> lastPath) {
+        return task.getProcessedIndex().orElseGet(() -> new ProcessedIndex(lastPath, new TreeSet<>(FileList.NAME_ORDER)));
+    }
+
+    // the listing starts after this
+    @JsonProperty("boundary")
+    Optional<String> getBoundary() {
+        return boundary;
+    }
+
+    // the names encoded for the task source, which are read back by the JsonCreator
+    @JsonProperty("names")
+    byte[] getNames() {
+        return encode();
+    }
+
+    int size() {
+        return names.size();
+    }
+
+    boolean contains(final String name) {
+        return (boundary.isPresent() && FileList.compareNames(name, boundary.get()) <= 0) || names.contains(name);
+    }
+
+    /**
+     * Returns a new index which contains {@code read} in addition, keeping up to {@code window} names after the boundary.
+     */
+    ProcessedIndex add(final Collection<String> read, final int window) {
+        final TreeSet<String> merged = new TreeSet<>(FileList.NAME_ORDER);
+        merged.addAll(names);
+        for (String name : read) {
+            if (!contains(name)) {
+                merged.add(name);
+            }
+        }
+        Optional<String> newBoundary = boundary;
+        while (merged.size() > window) {
+            newBoundary = Optional.of(merged.pollFirst());
+        }
+        return new ProcessedIndex(newBoundary, merged);
+    }
+
+    /**
+     * Returns the index as a value of ConfigDiff, which is read back by the JsonCreator.
+     */
+    Map<String, Object> toConfig() {
+        final Map<String, Object> config = new LinkedHashMap<>();
+        boundary.ifPresent(value -> config.put("boundary", value));
+        config.put("names", Base64.getEncoder().encodeToString(encode()));
+        return config;
+    }
+
+    /**
+     * Returns a short digest of the index to tell listings of different indexes apart.
+     */
+    String fingerprint() {
+        return boundary.orElse("") + "/" + names.size() + "/" + Integer.toHexString(Arrays.hashCode(encode()));
+    }
+
+    // each name is written as the length of the prefix shared with the previous name, the length of the rest, and the rest
+    private byte[] encode() {
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        try (final GZIPOutputStream out = new GZIPOutputStream(binary)) {
+            final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            FileList.writeVarint(plain, names.size());
+            byte[] previous = new byte[0];
+            for (String name : names) {
+                final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                int shared = 0;
+                while (shared < previous.length && shared < bytes.length && previous[shared] == bytes[shared]) {
+                    shared++;
+                }
+                FileList.writeVarint(plain, shared);
+                FileList.writeVarint(plain, bytes.length - shared);
+                plain.write(bytes, shared, bytes.length - shared);
+                previous = bytes;
+            }
+            plain.writeTo(out);
+        } catch (final IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return binary.toByteArray();
+    }
+
+    private static NavigableSet<String> decode(final byte[] data) {
+        final TreeSet<String> names = new TreeSet<>(FileList.NAME_ORDER);
+        if (data == null || data.length == 0) {
+            return names;
+        }
+        final ByteBuffer buffer;
+        try (final GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            final byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) >= 0) {
+                plain.write(chunk, 0, n);
+            }
+            buffer = ByteBuffer.wrap(plain.toByteArray());
+        } catch (final IOException ex) {
+            throw new UncheckedIOException("Could not read processed_index", ex);
+        }
+        final int count = (int) FileList.readVarint(buffer);
+        byte[] previous = new byte[0];
+        for (int i = 0; i < count; i++) {
+            final int shared = (int) FileList.readVarint(buffer);
+            final int rest = (int) FileList.readVarint(buffer);
+            final byte[] bytes = Arrays.copyOf(previous, shared + rest);
+            buffer.get(bytes, shared, rest);
+            names.add(new String(bytes, StandardCharsets.UTF_8));
+            previous = bytes;
+        }
+        return names;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import com.google.auth.Credentials;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import java.io.IOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Credentials whose access token is refreshed on a background thread before it expires.
+ *
+ * Requests get the current token without blocking, except the first one, and the ones after the background
+ * refresh has kept failing until the token expired. The credentials are shared by all the clients built from the same
+ * key in the JVM, and they stop refreshing after no request has used them for an hour.
+ */
+class RefreshingCredentials extends Credentials {
+    interface Loader {
+        GoogleCredentials load() throws IOException, GeneralSecurityException;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshingCredentials.class);
+
+    private static final ConcurrentHashMap<String, RefreshingCredentials> SHARED = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "embulk-input-gcs-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // a token is refreshed this long before it expires
+    private static final long REFRESH_MARGIN_MILLIS = 5 * 60 * 1000;
+    private static final long RETRY_INTERVAL_MILLIS = 10 * 1000;
+    private static final long IDLE_MILLIS = 60 * 60 * 1000;
+
+    private final String id;
+    private final GoogleCredentials delegate;
+    private volatile AccessToken token;
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+    private boolean scheduled = false;
+
+    private RefreshingCredentials(final String id, final GoogleCredentials delegate) {
+        this.id = id;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the credentials shared by {@code id}, which identifies the key, or loads new ones from the key.
+     * New credentials start with {@code initialToken} if it is given, such as a token shared by the transaction.
+     */
+    static RefreshingCredentials of(final String id, final Loader loader, final Optional<AccessToken> initialToken)
+            throws IOException, GeneralSecurityException {
+        final RefreshingCredentials shared = SHARED.get(id);
+        if (shared != null) {
+            return shared;
+        }
+        final RefreshingCredentials loaded = new RefreshingCredentials(id, loader.load());
+        final RefreshingCredentials raced = SHARED.putIfAbsent(id, loaded);
+        if (raced != null) {
+            return raced;
+        }
+        if (initialToken.isPresent() && !isExpired(initialToken.get())) {
+            loaded.start(initialToken.get());
+        }
+        return loaded;
+    }
+
+    @Override
+    public String getAuthenticationType() {
+        return "OAuth2";
+    }
+
+    @Override
+    public Map<String, List<String>> getRequestMetadata(final URI uri) throws IOException {
+        lastUsedMillis = System.currentTimeMillis();
+        AccessToken current = token;
+        if (current == null || isExpired(current)) {
+            current = refreshIfExpired();
+        }
+        return Collections.singletonMap("Authorization", Collections.singletonList("Bearer " + current.getTokenValue()));
+    }
+
+    @Override
+    public boolean hasRequestMetadata() {
+        return true;
+    }
+
+    @Override
+    public boolean hasRequestMetadataOnly() {
+        return true;
+    }
+
+    @Override
+    public void refresh() throws IOException {
+        refreshToken();
+    }
+
+    private synchronized void start(final AccessToken initialToken) {
+        token = initialToken;
+        scheduled = true;
+        schedule(refreshDelay(token));
+    }
+
+    private synchronized AccessToken refreshIfExpired() throws IOException {
+        // another thread may have refreshed it while waiting for the lock
+        if (token == null || isExpired(token)) {
+            refreshToken();
+        }
+        return token;
+    }
+
+    private synchronized void refreshToken() throws IOException {
+        delegate.refresh();
+        token = delegate.getAccessToken();
+        if (!scheduled) {
+            scheduled = true;
+            schedule(refreshDelay(token));
+        }
+    }
+
+    private synchronized void refreshInBackground() {
+        scheduled = false;
+        if (System.currentTimeMillis() - lastUsedMillis > IDLE_MILLIS) {
+            // a client still holding these credentials refreshes the token by itself, and schedules it again
+            SHARED.remove(id, this);
+            return;
+        }
+        try {
+            refreshToken();
+        } catch (final IOException | RuntimeException ex) {
+            LOG.warn(String.format("Could not refresh the access token, retrying in %d seconds", RETRY_INTERVAL_MILLIS / 1000), ex);
+            scheduled = true;
+            schedule(RETRY_INTERVAL_MILLIS);
+        }
+    }
+
+    private void schedule(final long delayMillis) {
+        REFRESHER.schedule(this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static long refreshDelay(final AccessToken token) {
+        if (token.getExpirationTime() == null) {
+            return IDLE_MILLIS;
+        }
+        return Math.max(0, token.getExpirationTime().getTime() - System.currentTimeMillis() - REFRESH_MARGIN_MILLIS);
+    }
+
+    private static boolean isExpired(final AccessToken token) {
+        return token.getExpirationTime() != null && token.getExpirationTime().getTime() <= System.currentTimeMillis();
+    }
+}
@@ -19,8 +19,13 @@ package org.embulk.input.gcs;
 import com.google.api.client.auth.oauth2.TokenErrorResponse;
 import com.google.api.client.auth.oauth2.TokenResponseException;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.gax.paging.Page;
+import com.google.cloud.BatchResult;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageBatch;
+import com.google.cloud.storage.StorageException;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Predicate;
 import org.embulk.util.config.Config;
@@ -84,11 +89,27 @@ class RetryUtils {
         return e.getStatusCode() / 100 != 4;
     };
 
+    /**
+     * A utility predicate to detect status code 4xx of `StorageException`
+     * But will retry 408 Request Timeout and 429 Too Many Requests
+     */
+    private static final Predicate<StorageException> STORAGE_ERROR_NOT_RETRY_4XX = e -> {
+        int statusCode = e.getCode();
+        return statusCode / 100 != 4 || statusCode == 408 || statusCode == 429;
+    };
+
     /**
      * A default (abstract) retryable impl, which makes use of above 2 predicates
      * With default behaviors onRetry, etc.
      */
     public abstract static class DefaultRetryable<T> implements Retryable<T> {
+        // the request, such as GET or LIST, which is logged on retries
+        private final String operation;
+
+        protected DefaultRetryable(final String operation) {
+            this.operation = operation;
+        }
+
         @Override
         public boolean isRetryableException(final Exception exception) {
             if (exception instanceof GoogleJsonResponseException) {
@@ -101,8 +122,9 @@ class RetryUtils {
 
         @Override
         public void onRetry(final Exception exception, final int retryCount, final int retryLimit, final int retryWait) {
-            String message = String.format("GCS GET request failed. Retrying %d/%d after %d seconds. Message: %s: %s",
-                    retryCount, retryLimit, retryWait / 1000, exception.getClass(), exception.getMessage());
+            Tracing.retry(operation, exception, retryCount, retryLimit, retryWait);
+            String message = String.format("GCS %s request failed. Retrying %d/%d after %d seconds. Message: %s: %s",
+                    operation, retryCount, retryLimit, retryWait / 1000, exception.getClass(), exception.getMessage());
             if (retryCount % 3 == 0) {
                 LOG.warn(message, exception);
             } else {
@@ -119,7 +141,7 @@ class RetryUtils {
      * Return Blob GET op that is ready for {@code withRetry}
      */
     static DefaultRetryable<Blob> get(final Storage client, final String bucket, final String key) {
-        return new DefaultRetryable<Blob>() {
+        return new DefaultRetryable<Blob>("GET") {
             @Override
             public Blob call() {
                 return client.get(bucket, key);
@@ -127,6 +149,84 @@ class RetryUtils {
         };
     }
 
+    /**
+     * Return a batched Blob GET op of {@code keys} that is ready for {@code withRetry}, whose result has null for missing objects
+     *
+     * A batch contains up to 100 requests. It is retried as a whole if any of them fails, and 4xx errors other than 404 are not retried.
+     */
+    static DefaultRetryable<Blob[]> getAll(final Storage client, final String bucket, final List<String> keys) {
+        return new DefaultRetryable<Blob[]>("batch GET") {
+            @Override
+            public Blob[] call() {
+                final Blob[] blobs = new Blob[keys.size()];
+                final StorageException[] failure = new StorageException[1];
+                final StorageBatch batch = client.batch();
+                for (int i = 0; i < keys.size(); i++) {
+                    final int index = i;
+                    // 404 is a success with null
+                    batch.get(bucket, keys.get(i)).notify(new BatchResult.Callback<Blob, StorageException>() {
+                        @Override
+                        public void success(final Blob blob) {
+                            blobs[index] = blob;
+                        }
+
+                        @Override
+                        public void error(final StorageException exception) {
+                            failure[0] = exception;
+                        }
+                    });
+                }
+                batch.submit();
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                return blobs;
+            }
+
+            @Override
+            public boolean isRetryableException(final Exception exception) {
+                if (exception instanceof StorageException) {
+                    return STORAGE_ERROR_NOT_RETRY_4XX.test((StorageException) exception);
+                }
+                return super.isRetryableException(exception);
+            }
+        };
+    }
+
+    /**
+     * Return a single page of Blob LIST op that is ready for {@code withRetry}
+     *
+     * Unlike other ops, 4xx errors of `StorageException` are not retried, such as an invalid page token or a missing bucket.
+     */
+    static DefaultRetryable<Page<Blob>> list(final Storage client, final String bucket, final Storage.BlobListOption... options) {
+        return new DefaultRetryable<Page<Blob>>("LIST") {
+            @Override
+            public Page<Blob> call() {
+                return client.list(bucket, options);
+            }
+
+            @Override
+            public boolean isRetryableException(final Exception exception) {
+                if (exception instanceof StorageException) {
+                    return STORAGE_ERROR_NOT_RETRY_4XX.test((StorageException) exception);
+                }
+                return super.isRetryableException(exception);
+            }
+        };
+    }
+
+    /**
+     * Return the first `StorageException` in the causes of {@code e}, which {@code withRetry} wraps twice
+     */
+    static Optional<StorageException> findStorageException(final Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StorageException) {
+                return Optional.of((StorageException) cause);
+            }
+        }
+        return Optional.empty();
+    }
+
     /**
      * Utility method
      */
@@ -17,47 +17,150 @@
 package org.embulk.input.gcs;
 
 import com.google.cloud.ReadChannel;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import org.embulk.config.ConfigException;
 import org.embulk.util.file.InputStreamFileInput;
 import org.embulk.util.file.ResumableInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class SingleFileProvider implements InputStreamFileInput.Provider {
-    private final Storage client;
-    private final String bucket;
+    private static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
+
+    private final PluginTask task;
+    private final List<String> buckets;
+    private final FileList files;
+    private final int taskIndex;
     private final Iterator<String> iterator;
+    private final Optional<WorkQueue> workQueue;
+    private final List<String> allFiles;
+    private final List<String> consumedFiles = new ArrayList<>();
+    private final boolean validateChecksum;
+    private final MemoryGovernor memoryGovernor;
+    private final AdaptiveChunkSize chunkSize;
+    private final int sampleBytes;
+    private Storage client;
+    private ExecutorService checksumHelper;
+    private int current = 0;
     private boolean opened = false;
 
     SingleFileProvider(final PluginTask task, final int taskIndex) {
-        this.client = AuthUtils.newClient(task);
-        this.bucket = task.getBucket();
-        this.iterator = task.getFiles().get(taskIndex).iterator();
+        this.task = task;
+        this.buckets = GcsFileInput.getBuckets(task);
+        this.files = task.getFiles();
+        this.taskIndex = taskIndex;
+        this.iterator = files.get(taskIndex).iterator();
+        this.workQueue = task.getWorkQueueId().map(WorkQueue::of);
+        this.allFiles = files.getAllFiles();
+        this.validateChecksum = task.getValidateChecksum() && files.hasChecksums();
+        this.memoryGovernor = MemoryGovernor.of(task);
+        this.chunkSize = AdaptiveChunkSize.of(task, memoryGovernor);
+        this.sampleBytes = task.getSampling() ? task.getSampleBytes() : 0;
     }
 
     @Override
     public InputStreamFileInput.InputStreamWithHints openNextWithHints() {
-        if (opened) {
-            return null;
+        final int index;
+        final String key;
+        if (workQueue.isPresent()) {
+            // keep taking files until all the tasks have taken all the files
+            index = workQueue.get().poll();
+            if (index < 0) {
+                return null;
+            }
+            key = allFiles.get(index);
+        } else {
+            if (opened) {
+                return null;
+            }
+            opened = true;
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            index = files.getFileIndex(taskIndex, current++);
+            key = iterator.next();
+        }
+        String bucket = buckets.get(files.getSource(index));
+        String name = String.format("gcs://%s/%s", bucket, key);
+        if (workQueue.isPresent()) {
+            consumedFiles.add(name);
+        }
+        long openNanos = System.nanoTime();
+        Storage client = getClient();
+        // the version found by the transaction is read if its generation is known
+        final Optional<Long> generation = files.hasGenerations() ? Optional.of(files.getGeneration(index)) : Optional.empty();
+        ReadChannel ch;
+        try {
+            ch = getBlob(client, bucket, key, generation).reader();
+        } catch (final StorageException e) {
+            if (e.getCode() == 401 || e.getCode() == 403) {
+                // the credentials are verified by the transaction only, so they can be rejected here first
+                throw new ConfigException(String.format("Could not read %s: the credentials are invalid or not permitted to read it", name), e);
+            }
+            throw e;
         }
-        opened = true;
-        if (!iterator.hasNext()) {
-            return null;
+        if (sampleBytes > 0) {
+            // preview and guess need only the beginning of the object, so the whole object is neither read nor validated
+            return new InputStreamFileInput.InputStreamWithHints(new ResumableInputStream(chunkSize.sample(ch, sampleBytes),
+                    new InputStreamReopener(client, bucket, key, generation, chunkSize, sampleBytes)), name);
         }
-        String key = iterator.next();
-        ReadChannel ch = client.get(bucket, key).reader();
-        return new InputStreamFileInput.InputStreamWithHints(
-                new ResumableInputStream(Channels.newInputStream(ch), new InputStreamReopener(client, bucket, key)),
-                String.format("gcs://%s/%s", bucket, key)
-        );
+        InputStream stream = new ResumableInputStream(Channels.newInputStream(chunkSize.wrap(ch, name, openNanos)),
+                new InputStreamReopener(client, bucket, key, generation, chunkSize, 0));
+        if (validateChecksum) {
+            stream = new ChecksumInputStream(stream, getChecksumHelper(), name, files.getChecksum(index), memoryGovernor);
+        }
+        return new InputStreamFileInput.InputStreamWithHints(stream, name);
+    }
+
+    // returns the files taken from the work queue by this task
+    List<String> getConsumedFiles() {
+        return consumedFiles;
+    }
+
+    AdaptiveChunkSize getChunkSize() {
+        return chunkSize;
     }
 
     @Override
     public void close() {
+        if (checksumHelper != null) {
+            checksumHelper.shutdownNow();
+        }
+    }
+
+    // the client is built on the first file, so that a task given no file makes no client
+    private Storage getClient() {
+        if (client == null) {
+            client = AuthUtils.newUncheckedClient(task);
+        }
+        return client;
+    }
+
+    private ExecutorService getChecksumHelper() {
+        if (checksumHelper == null) {
+            checksumHelper = IoExecutors.newExecutor("embulk-input-gcs-checksum", 1);
+        }
+        return checksumHelper;
+    }
+
+    // returns the version of generation if it is known, or the latest version
+    static Blob getBlob(final Storage client, final String bucket, final String key, final Optional<Long> generation) {
+        final Blob blob = generation.isPresent() ? client.get(BlobId.of(bucket, key, generation.get())) : client.get(bucket, key);
+        if (blob == null) {
+            throw new IllegalStateException(String.format("gcs://%s/%s is not found, which may have been deleted or overwritten after the transaction", bucket, key));
+        }
+        return blob;
     }
 
     static class InputStreamReopener implements ResumableInputStream.Reopener {
@@ -65,19 +168,37 @@ public class SingleFileProvider implements InputStreamFileInput.Provider {
         private final Storage client;
         private final String bucket;
         private final String key;
+        private final Optional<Long> generation;
+        private final AdaptiveChunkSize chunkSize;
+        // the object is read up to this, or to the end if 0
+        private final int sampleBytes;
 
         InputStreamReopener(final Storage client, final String bucket, final String key) {
+            this(client, bucket, key, Optional.empty(), AdaptiveChunkSize.fixed(DEFAULT_CHUNK_SIZE), 0);
+        }
+
+        InputStreamReopener(final Storage client, final String bucket, final String key, final Optional<Long> generation,
+                final AdaptiveChunkSize chunkSize, final int sampleBytes) {
             this.client = client;
             this.bucket = bucket;
             this.key = key;
+            this.generation = generation;
+            this.chunkSize = chunkSize;
+            this.sampleBytes = sampleBytes;
         }
 
         @Override
         public InputStream reopen(final long offset, final Exception closedCause) throws IOException {
             logger.warn(String.format("GCS read failed. Retrying GET request with %,d bytes offset", offset), closedCause);
-            ReadChannel ch = client.get(bucket, key).reader();
+            String name = String.format("gcs://%s/%s", bucket, key);
+            Tracing.reopen(name, offset, closedCause);
+            long openNanos = System.nanoTime();
+            ReadChannel ch = getBlob(client, bucket, key, generation).reader();
             ch.seek(offset);
-            return Channels.newInputStream(ch);
+            if (sampleBytes > 0) {
+                return chunkSize.sample(ch, sampleBytes - offset);
+            }
+            return Channels.newInputStream(chunkSize.wrap(ch, name, openNanos));
         }
     }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+/**
+ * Records what the plugin is doing as JDK Flight Recorder events.
+ *
+ * This is the implementation for Java 8, which does nothing. The jar is a multi-release jar, and the implementation
+ * under META-INF/versions/11 commits the events on Java 11 or later. Both have the same methods.
+ */
+final class Tracing {
+    private Tracing() {
+    }
+
+    static void listPage(final String bucket, final String prefix, final int objects, final long latencyNanos) {
+    }
+
+    static void open(final String name, final long timeToFirstByteNanos) {
+    }
+
+    static void chunk(final String name, final long bytes, final long durationNanos, final int chunkSize) {
+    }
+
+    static void reopen(final String name, final long offset, final Throwable cause) {
+    }
+
+    static void retry(final String operation, final Throwable cause, final int retryCount, final int retryLimit, final int retryWaitMillis) {
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.gcs;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.embulk.util.config.Config;
+import org.embulk.util.config.ConfigDefault;
+
+/**
+ * Hands out the files of a FileList to the tasks running in this JVM, one by one in the order of the list.
+ *
+ * A task keeps taking files until the queue is empty, instead of reading the files split to it by
+ * FileList.Builder, so that a task which drew small files doesn't stay idle while another is reading large ones.
+ * The queue is registered by the transaction, and it is not available to tasks running on other JVMs.
+ */
+class WorkQueue implements AutoCloseable {
+    interface Task {
+        @Config("work_stealing")
+        @ConfigDefault("false")
+        boolean getWorkStealing();
+
+        // task-only, set by the transaction, because the queue is registered only while its tasks run
+        Optional<String> getWorkQueueId();
+
+        void setWorkQueueId(Optional<String> workQueueId);
+    }
+
+    private static final ConcurrentHashMap<String, WorkQueue> QUEUES = new ConcurrentHashMap<>();
+
+    private final String id;
+    private final int fileCount;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private WorkQueue(final String id, final int fileCount) {
+        this.id = id;
+        this.fileCount = fileCount;
+    }
+
+    /**
+     * Registers a queue of {@code fileCount} files, which is available until it is closed.
+     */
+    static WorkQueue register(final int fileCount) {
+        final WorkQueue queue = new WorkQueue(UUID.randomUUID().toString(), fileCount);
+        QUEUES.put(queue.id, queue);
+        return queue;
+    }
+
+    static WorkQueue of(final String id) {
+        final WorkQueue queue = QUEUES.get(id);
+        if (queue == null) {
+            throw new IllegalStateException(
+                    "The files to read are not found in this JVM. work_stealing works only with the local executor, and can't be resumed.");
+        }
+        return queue;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    /**
+     * Returns the index of the next file in the FileList, or -1 if all the files have been taken.
+     */
+    int poll() {
+        if (next.get() >= fileCount) {
+            return -1;
+        }
+        final int index = next.getAndIncrement();
+        return index < fileCount ? index : -1;
+    }
+
+    @Override
+    public void close() {
+        QUEUES.remove(id);
+    }
+}
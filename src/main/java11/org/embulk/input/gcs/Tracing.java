@@ -0,0 +1,183 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Records what the plugin is doing as JDK Flight Recorder events.
+ *
+ * This is the implementation for Java 11 or later, which is put under META-INF/versions/11 of the multi-release jar.
+ * The events are committed only while a recording enables them, so that they cost almost nothing otherwise.
+ */
+final class Tracing {
+    private Tracing() {
+    }
+
+    static void listPage(final String bucket, final String prefix, final int objects, final long latencyNanos) {
+        final ListPageEvent event = new ListPageEvent();
+        if (event.isEnabled()) {
+            event.bucket = bucket;
+            event.prefix = prefix;
+            event.objects = objects;
+            event.latency = latencyNanos;
+            event.commit();
+        }
+    }
+
+    static void open(final String name, final long timeToFirstByteNanos) {
+        final OpenEvent event = new OpenEvent();
+        if (event.isEnabled()) {
+            event.name = name;
+            event.timeToFirstByte = timeToFirstByteNanos;
+            event.commit();
+        }
+    }
+
+    static void chunk(final String name, final long bytes, final long durationNanos, final int chunkSize) {
+        final ChunkEvent event = new ChunkEvent();
+        if (event.isEnabled()) {
+            event.name = name;
+            event.bytes = bytes;
+            event.readDuration = durationNanos;
+            event.chunkSize = chunkSize;
+            event.commit();
+        }
+    }
+
+    static void reopen(final String name, final long offset, final Throwable cause) {
+        final ReopenEvent event = new ReopenEvent();
+        if (event.isEnabled()) {
+            event.name = name;
+            event.offset = offset;
+            event.cause = String.valueOf(cause);
+            event.commit();
+        }
+    }
+
+    static void retry(final String operation, final Throwable cause, final int retryCount, final int retryLimit, final int retryWaitMillis) {
+        final RetryEvent event = new RetryEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.cause = String.valueOf(cause);
+            event.retryCount = retryCount;
+            event.retryLimit = retryLimit;
+            event.retryWait = retryWaitMillis;
+            event.commit();
+        }
+    }
+
+    @Name("org.embulk.input.gcs.ListPage")
+    @Label("List Page")
+    @Category({"Embulk", "GCS"})
+    @Description("A page of objects listed from a bucket")
+    @StackTrace(false)
+    static class ListPageEvent extends Event {
+        @Label("Bucket")
+        String bucket;
+
+        @Label("Prefix")
+        String prefix;
+
+        @Label("Objects")
+        int objects;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("org.embulk.input.gcs.Open")
+    @Label("Open Object")
+    @Category({"Embulk", "GCS"})
+    @Description("An object opened to read, with the time from opening it to reading its first byte")
+    @StackTrace(false)
+    static class OpenEvent extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Time to First Byte")
+        @Timespan(Timespan.NANOSECONDS)
+        long timeToFirstByte;
+    }
+
+    @Name("org.embulk.input.gcs.Chunk")
+    @Label("Read Chunk")
+    @Category({"Embulk", "GCS"})
+    @Description("A chunk of an object read by a request")
+    @StackTrace(false)
+    static class ChunkEvent extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+
+        @Label("Read Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long readDuration;
+
+        @Label("Chunk Size")
+        @DataAmount
+        int chunkSize;
+    }
+
+    @Name("org.embulk.input.gcs.Reopen")
+    @Label("Reopen Object")
+    @Category({"Embulk", "GCS"})
+    @Description("An object reopened to resume reading after a failure")
+    static class ReopenEvent extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Offset")
+        @DataAmount
+        long offset;
+
+        @Label("Cause")
+        String cause;
+    }
+
+    @Name("org.embulk.input.gcs.Retry")
+    @Label("Retry")
+    @Category({"Embulk", "GCS"})
+    @Description("A request retried after a failure")
+    static class RetryEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Cause")
+        String cause;
+
+        @Label("Retry Count")
+        int retryCount;
+
+        @Label("Retry Limit")
+        int retryLimit;
+
+        @Label("Retry Wait")
+        @Timespan(Timespan.MILLISECONDS)
+        long retryWait;
+    }
+}
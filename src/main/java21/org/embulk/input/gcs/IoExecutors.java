@@ -0,0 +1,100 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the executors of the tasks blocking on I/O in the plugin, such as listing and computing checksums.
+ *
+ * This is the implementation for Java 21 or later, which is put under META-INF/versions/21 of the multi-release jar.
+ * Each task runs on its own virtual thread, so a blocked task doesn't hold an OS thread.
+ */
+final class IoExecutors {
+    private IoExecutors() {
+    }
+
+    /**
+     * Returns an executor which runs at most {@code parallelism} tasks at once, on threads named after {@code name}.
+     */
+    static ExecutorService newExecutor(final String name, final int parallelism) {
+        return new BoundedExecutor(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory()), parallelism);
+    }
+
+    /**
+     * Lets the tasks over the parallelism wait on their virtual threads, which costs little unlike waiting in a queue.
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService {
+        private final ExecutorService executor;
+        private final Semaphore permits;
+
+        BoundedExecutor(final ExecutorService executor, final int parallelism) {
+            this.executor = executor;
+            this.permits = new Semaphore(parallelism);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            executor.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (final InterruptedException ex) {
+                    // shut down before the task started, which is cancelled not to leave its Future incomplete
+                    if (command instanceof Future) {
+                        ((Future<?>) command).cancel(false);
+                    }
+                    return;
+                }
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return executor.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+    }
+}
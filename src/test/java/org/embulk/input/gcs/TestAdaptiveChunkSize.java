@@ -0,0 +1,121 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.google.cloud.ReadChannel;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class TestAdaptiveChunkSize {
+    private static final int MIB = 1024 * 1024;
+
+    @Test
+    public void testAdditiveIncreaseWithinMax() {
+        final AdaptiveChunkSize chunkSize = new AdaptiveChunkSize(true, 2 * MIB, MIB / 4, 4 * MIB, 10000);
+        chunkSize.onChunk(2 * MIB, TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(3 * MIB, chunkSize.getChunkSize());
+        chunkSize.onChunk(3 * MIB, TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(4 * MIB, chunkSize.getChunkSize());
+        chunkSize.onChunk(4 * MIB, TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(4 * MIB, chunkSize.getChunkSize());
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() {
+        final AdaptiveChunkSize chunkSize = new AdaptiveChunkSize(true, 8 * MIB, MIB, 64 * MIB, 10000);
+        chunkSize.onChunk(8 * MIB, TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(9 * MIB, chunkSize.getChunkSize());
+        // throughput dropped
+        chunkSize.onChunk(9 * MIB, TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(9 * MIB / 2, chunkSize.getChunkSize());
+        // slower than max_chunk_latency_millis
+        chunkSize.onChunk(9 * MIB / 2, TimeUnit.MILLISECONDS.toNanos(20000));
+        assertEquals(9 * MIB / 4, chunkSize.getChunkSize());
+        chunkSize.onFailure();
+        chunkSize.onFailure();
+        assertEquals(MIB, chunkSize.getChunkSize());
+
+        final Map<String, Object> metrics = chunkSize.getMetrics();
+        assertEquals(3L, metrics.get("chunks"));
+        assertEquals(MIB, metrics.get("min_chunk_size"));
+        assertEquals(9 * MIB, metrics.get("max_chunk_size"));
+    }
+
+    @Test
+    public void testFixedWhenDisabled() {
+        final AdaptiveChunkSize chunkSize = new AdaptiveChunkSize(false, 2 * MIB, MIB / 4, 64 * MIB, 10000);
+        chunkSize.onChunk(2 * MIB, TimeUnit.MILLISECONDS.toNanos(100));
+        chunkSize.onFailure();
+        assertEquals(2 * MIB, chunkSize.getChunkSize());
+    }
+
+    @Test
+    public void testStreamsWithoutMemory() throws IOException {
+        final MemoryGovernor governor = new MemoryGovernor(3 * MIB);
+        final AdaptiveChunkSize chunkSize = new AdaptiveChunkSize(false, 2 * MIB, MIB / 4, 64 * MIB, 10000, governor);
+        final ReadChannel first = mock(ReadChannel.class);
+        final ReadChannel second = mock(ReadChannel.class);
+        try (final ReadableByteChannel reserved = chunkSize.wrap(first, "gcs://any_bucket/first", System.nanoTime())) {
+            verify(first).setChunkSize(2 * MIB);
+            assertEquals(2 * MIB, governor.getUsed());
+            try (final ReadableByteChannel streaming = chunkSize.wrap(second, "gcs://any_bucket/second", System.nanoTime())) {
+                verify(second).setChunkSize(AdaptiveChunkSize.STREAMING_CHUNK_SIZE);
+                assertEquals(2 * MIB, governor.getUsed());
+            }
+        }
+        assertEquals(0, governor.getUsed());
+        assertEquals(1, governor.getFallbacks());
+    }
+
+    @Test
+    public void testSampleReservesMemory() throws IOException {
+        final MemoryGovernor governor = new MemoryGovernor(3 * MIB);
+        final AdaptiveChunkSize chunkSize = new AdaptiveChunkSize(false, 2 * MIB, MIB / 4, 64 * MIB, 10000, governor);
+        final ReadChannel first = mock(ReadChannel.class);
+        final ReadChannel second = mock(ReadChannel.class);
+        try (final InputStream reserved = chunkSize.sample(first, 2 * MIB)) {
+            verify(first).setChunkSize(2 * MIB);
+            assertEquals(2 * MIB, governor.getUsed());
+            try (final InputStream streaming = chunkSize.sample(second, 2 * MIB)) {
+                verify(second).setChunkSize(AdaptiveChunkSize.STREAMING_CHUNK_SIZE);
+                assertEquals(2 * MIB, governor.getUsed());
+            }
+        }
+        assertEquals(0, governor.getUsed());
+        assertEquals(1, governor.getFallbacks());
+    }
+
+    @Test
+    public void testLargeSampleByChunks() throws IOException {
+        final MemoryGovernor governor = new MemoryGovernor(64 * MIB);
+        final AdaptiveChunkSize chunkSize = new AdaptiveChunkSize(false, 2 * MIB, MIB / 4, 64 * MIB, 10000, governor);
+        final ReadChannel channel = mock(ReadChannel.class);
+        try (final InputStream sample = chunkSize.sample(channel, 1L << 40)) {
+            verify(channel).setChunkSize(2 * MIB);
+            assertEquals(2 * MIB, governor.getUsed());
+        }
+        assertEquals(0, governor.getUsed());
+    }
+}
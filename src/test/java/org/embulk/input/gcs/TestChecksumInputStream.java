@@ -0,0 +1,88 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+
+public class TestChecksumInputStream {
+    private static final String SAMPLE_PATH = TestChecksumInputStream.class.getResource("/sample_01.csv").getPath();
+
+    private final ExecutorService helper = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        helper.shutdownNow();
+    }
+
+    @Test
+    public void testDecodeCrc32c() {
+        // "hello world" is "yZRlqg==" in the object metadata
+        assertEquals(Hashing.crc32c().hashBytes("hello world".getBytes()).asInt(), ChecksumInputStream.decodeCrc32c("yZRlqg=="));
+    }
+
+    @Test
+    public void testValidChecksum() throws IOException {
+        final byte[] expected = Files.readAllBytes(Paths.get(SAMPLE_PATH));
+        final String crc32c = Base64.getEncoder().encodeToString(
+                ByteBuffer.allocate(4).putInt(Hashing.crc32c().hashBytes(expected).asInt()).array());
+        try (final InputStream in = new ChecksumInputStream(
+                new ByteArrayInputStream(expected), helper, "gcs://any_bucket/any_file", ChecksumInputStream.decodeCrc32c(crc32c))) {
+            assertArrayEquals(expected, ByteStreams.toByteArray(in));
+        }
+    }
+
+    @Test
+    public void testValidChecksumWithoutMemory() throws IOException {
+        final byte[] expected = Files.readAllBytes(Paths.get(SAMPLE_PATH));
+        final MemoryGovernor governor = new MemoryGovernor(1);
+        try (final InputStream in = new ChecksumInputStream(new ByteArrayInputStream(expected), helper, "gcs://any_bucket/any_file",
+                Hashing.crc32c().hashBytes(expected).asInt(), governor)) {
+            assertArrayEquals(expected, ByteStreams.toByteArray(in));
+        }
+        assertEquals(0, governor.getUsed());
+        assertTrue(governor.getFallbacks() > 0);
+    }
+
+    @Test
+    public void testChecksumMismatch() throws IOException {
+        final byte[] data = Files.readAllBytes(Paths.get(SAMPLE_PATH));
+        final int wrong = Hashing.crc32c().hashBytes(data).asInt() + 1;
+        try (final InputStream in = new ChecksumInputStream(new ByteArrayInputStream(data), helper, "gcs://any_bucket/any_file", wrong)) {
+            ByteStreams.toByteArray(in);
+            fail("Should throw");
+        } catch (final IOException e) {
+            assertTrue(e.getMessage().contains("CRC32C mismatch of gcs://any_bucket/any_file"));
+        }
+    }
+}
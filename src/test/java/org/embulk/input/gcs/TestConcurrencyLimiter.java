@@ -0,0 +1,130 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import org.junit.Test;
+
+public class TestConcurrencyLimiter {
+    @Test
+    public void testHalvesOncePerRound() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(16);
+        long first = limiter.acquire();
+        long second = limiter.acquire();
+        assertEquals(2, limiter.getInFlight());
+
+        limiter.release(first, 503, Optional.empty());
+        assertEquals(8, limiter.getLimit());
+        // sent before the limit was halved, so it is not counted again
+        limiter.release(second, 429, Optional.empty());
+        assertEquals(8, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+
+        limiter.release(limiter.acquire(), 429, Optional.empty());
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testGrowsByOnePerRound() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8);
+        limiter.release(limiter.acquire(), 503, Optional.empty());
+        assertEquals(4, limiter.getLimit());
+        for (int i = 0; i < 4; i++) {
+            limiter.release(limiter.acquire(), 200, Optional.empty());
+        }
+        assertEquals(5, limiter.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limiter.release(limiter.acquire(), 206, Optional.empty());
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void testFailureWithoutResponseKeepsLimit() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4);
+        limiter.release(limiter.acquire(), 0, Optional.empty());
+        limiter.release(limiter.acquire(), 500, Optional.empty());
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    public void testWrappedTransportHoldsSlotUntilClosed() throws IOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4);
+        MockHttpTransport transport = new MockHttpTransport.Builder()
+                .setLowLevelHttpResponse(new MockLowLevelHttpResponse().setStatusCode(503).setContent("busy"))
+                .build();
+        HttpResponse response = limiter.wrap(transport).createRequestFactory()
+                .buildGetRequest(new GenericUrl("http://localhost/storage/v1/b/any_bucket/o"))
+                .setThrowExceptionOnExecuteError(false)
+                .execute();
+        assertEquals(503, response.getStatusCode());
+        assertEquals(1, limiter.getInFlight());
+        response.disconnect();
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testWaitsForSlot() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+        long acquired = limiter.acquire();
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.release(limiter.acquire(), 200, Optional.empty());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+        limiter.release(acquired, 200, Optional.empty());
+        waiter.join(10000);
+        assertFalse(waiter.isAlive());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testPausesUntilRetryAfter() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4);
+        limiter.release(limiter.acquire(), 429, Optional.of(Duration.ofMillis(300)));
+        long start = System.nanoTime();
+        limiter.release(limiter.acquire(), 200, Optional.empty());
+        assertTrue(System.nanoTime() - start >= 250_000_000L);
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        ZonedDateTime now = ZonedDateTime.of(2026, 10, 18, 0, 0, 0, 0, ZoneOffset.UTC);
+        assertEquals(Optional.of(Duration.ofSeconds(120)), ConcurrencyLimiter.parseRetryAfter("120", now));
+        assertEquals(Optional.of(Duration.ofSeconds(30)), ConcurrencyLimiter.parseRetryAfter("Sun, 18 Oct 2026 00:00:30 GMT", now));
+        assertEquals(Optional.of(Duration.ZERO), ConcurrencyLimiter.parseRetryAfter("Sat, 17 Oct 2026 00:00:00 GMT", now));
+        assertEquals(Optional.empty(), ConcurrencyLimiter.parseRetryAfter("soon", now));
+        assertEquals(Optional.empty(), ConcurrencyLimiter.parseRetryAfter(null, now));
+    }
+}
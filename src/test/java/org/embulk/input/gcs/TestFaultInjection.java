@@ -0,0 +1,164 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.embulk.input.gcs.GcsFileInputPlugin.CONFIG_MAPPER_FACTORY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.embulk.config.ConfigSource;
+import org.embulk.formatter.csv.CsvFormatterPlugin;
+import org.embulk.input.gcs.FakeGcsServer.Fault;
+import org.embulk.output.file.LocalFileOutputPlugin;
+import org.embulk.parser.csv.CsvParserPlugin;
+import org.embulk.spi.FileInputPlugin;
+import org.embulk.spi.FileOutputPlugin;
+import org.embulk.spi.FormatterPlugin;
+import org.embulk.spi.ParserPlugin;
+import org.embulk.test.TestingEmbulk;
+import org.embulk.util.config.units.LocalFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Runs Embulk jobs against {@link FakeGcsServer}, which fails the first request of some objects and pages.
+ */
+public class TestFaultInjection {
+    private static final String BUCKET = "fault-injection";
+    private static final int OBJECTS = 24;
+    private static final int ROWS = 8000;
+    private static final Fault[] FAULTS = {Fault.NONE, Fault.RESET, Fault.SERVICE_UNAVAILABLE, Fault.TOO_MANY_REQUESTS, Fault.SLOW_FIRST_BYTE};
+    // loose enough for a slow CI machine, including the backoff of the retries
+    private static final long MIN_BYTES_PER_SECOND = 256 * 1024;
+
+    @Rule
+    public TestingEmbulk embulk = TestingEmbulk.builder()
+            .registerPlugin(FormatterPlugin.class, "csv", CsvFormatterPlugin.class)
+            .registerPlugin(FileInputPlugin.class, "gcs", GcsFileInputPlugin.class)
+            .registerPlugin(FileOutputPlugin.class, "file", LocalFileOutputPlugin.class)
+            .registerPlugin(ParserPlugin.class, "csv", CsvParserPlugin.class)
+            .build();
+
+    private FakeGcsServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new FakeGcsServer(BUCKET);
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testReadsAllObjectsUnderFaults() throws IOException {
+        final List<String> expected = new ArrayList<>();
+        long totalBytes = 0;
+        for (int i = 0; i < OBJECTS; i++) {
+            final StringBuilder csv = new StringBuilder("id,name\n");
+            for (int j = 0; j < ROWS; j++) {
+                final String line = String.format("%d,object_%02d_row_%05d", i * ROWS + j, i, j);
+                csv.append(line).append('\n');
+                expected.add(line);
+            }
+            final byte[] data = csv.toString().getBytes(StandardCharsets.UTF_8);
+            server.put(String.format("data/part_%02d.csv", i), data, FAULTS[i % FAULTS.length]);
+            totalBytes += data.length;
+        }
+        server.put("other/part_00.csv", "id,name\n-1,not_listed\n".getBytes(StandardCharsets.UTF_8), Fault.NONE);
+        server.failPage(1, Fault.TRUNCATED_BODY);
+        server.failPage(2, Fault.SERVICE_UNAVAILABLE);
+        server.failPage(3, Fault.SHORT_PAGE);
+
+        final Path out = embulk.createTempFile("csv");
+        final long start = System.nanoTime();
+        embulk.runInput(config(), out);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        final List<String> actual = Files.readAllLines(out, StandardCharsets.UTF_8);
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+
+        for (Fault fault : Fault.values()) {
+            if (fault != Fault.NONE) {
+                assertTrue("No " + fault + " was injected", server.getInjected(fault) > 0);
+            }
+        }
+        assertTrue(String.format("Read %,d bytes in %.1f seconds", totalBytes, seconds), totalBytes / seconds >= MIN_BYTES_PER_SECOND);
+    }
+
+    @Test
+    public void testReadsUpToEndPathInclusive() throws IOException {
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2 * FakeGcsServer.PAGE_SIZE; i++) {
+            final String line = String.format("%d,object_%02d", i, i);
+            server.put(String.format("data/part_%02d.csv", i), ("id,name\n" + line + "\n").getBytes(StandardCharsets.UTF_8), Fault.NONE);
+            if (i <= FakeGcsServer.PAGE_SIZE) {
+                expected.add(line);
+            }
+        }
+
+        final Path out = embulk.createTempFile("csv");
+        // the first object of the second page, so that the listing stops in the middle of a page
+        embulk.runInput(config().set("end_path", String.format("data/part_%02d.csv", FakeGcsServer.PAGE_SIZE)), out);
+
+        final List<String> actual = Files.readAllLines(out, StandardCharsets.UTF_8);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    private ConfigSource config() {
+        return CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("type", "gcs")
+                .set("bucket", BUCKET)
+                .set("path_prefix", "data/")
+                .set("auth_method", "json_key")
+                .set("json_keyfile", Optional.of(LocalFile.ofContent(server.newJsonKey())))
+                .set("endpoint", server.getEndpoint())
+                // several requests per object, so that a fault can happen in the middle of it
+                .set("initial_chunk_size", 65536)
+                .set("initial_retry_interval_millis", 10)
+                .set("validate_checksum", true)
+                .set("parser", parserConfig());
+    }
+
+    private static ImmutableMap<String, Object> parserConfig() {
+        return ImmutableMap.<String, Object>builder()
+                .put("type", "csv")
+                .put("newline", "LF")
+                .put("delimiter", ",")
+                .put("skip_header_lines", 1)
+                .put("columns", ImmutableList.of(
+                        ImmutableMap.of("name", "id", "type", "long"),
+                        ImmutableMap.of("name", "name", "type", "string")))
+                .build();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+
+public class TestFileList {
+    @Test
+    public void testSplitsByMinTaskSize() {
+        FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*").minTaskSize(10);
+        builder.add("a", 4);
+        builder.add("b", 6);
+        builder.add("c", 20);
+        builder.add("d", 1);
+        FileList fileList = builder.build();
+
+        assertEquals(3, fileList.getTaskCount());
+        assertEquals(Arrays.asList("a", "b"), fileList.get(0));
+        assertEquals(Arrays.asList("c"), fileList.get(1));
+        assertEquals(Arrays.asList("d"), fileList.get(2));
+        assertEquals(Optional.of("d"), fileList.getLastPath(Optional.empty()));
+    }
+
+    @Test
+    public void testOneTaskPerFileByDefault() {
+        FileList.Builder builder = new FileList.Builder().pathMatchPattern("\\.csv$").minTaskSize(0);
+        assertTrue(builder.add("in/a.csv", 1));
+        assertFalse(builder.add("in/b.txt", 1));
+        assertTrue(builder.add("in/c.csv", 1));
+        FileList fileList = builder.build();
+
+        assertEquals(2, fileList.getTaskCount());
+        assertEquals("in/a.csv", fileList.get(0).get(0));
+        assertEquals("in/c.csv", fileList.get(1).get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoFileAfterFinish() {
+        FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*");
+        builder.add("a/1", 1);
+        builder.finish().finish();
+        assertEquals(Arrays.asList("a/1"), builder.build().getAllFiles());
+        builder.add("a/2", 1);
+    }
+
+    @Test
+    public void testMergeSources() {
+        FileList.Builder first = new FileList.Builder().pathMatchPattern(".*").minTaskSize(0).limitTotalFileCount(4).source(0);
+        first.add("a/1", 1);
+        first.add("a/2", 1);
+        FileList.Builder second = new FileList.Builder().pathMatchPattern(".*").source(1);
+        second.add("b/1", 1);
+        second.add("b/2", 1);
+        second.add("b/3", 1);
+        FileList fileList = FileList.Builder.merge(Arrays.asList(first, second));
+
+        // total_file_count_limit of the first builder is applied to the merged list
+        assertEquals(4, fileList.getTaskCount());
+        assertEquals("a/2", fileList.get(1).get(0));
+        assertEquals(0, fileList.getSource(fileList.getFileIndex(1, 0)));
+        assertEquals("b/2", fileList.get(3).get(0));
+        assertEquals(1, fileList.getSource(fileList.getFileIndex(3, 0)));
+        assertEquals(Optional.of("a/2"), fileList.getLastPath(0, Optional.empty()));
+        assertEquals(Optional.of("b/2"), fileList.getLastPath(1, Optional.empty()));
+        assertEquals(Optional.of("c"), fileList.getLastPath(2, Optional.of("c")));
+    }
+
+    @Test
+    public void testConcurrentSegments() throws Exception {
+        final FileList.Builder builder = new FileList.Builder().pathMatchPattern("\\.csv$").minTaskSize(0).limitTotalFileCount(250);
+        final List<Thread> threads = new ArrayList<>();
+        // added in the reverse order of the segments
+        for (int i = 3; i >= 0; i--) {
+            final FileList.Builder segment = builder.segment(i);
+            final int index = i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    segment.add(String.format("%d/%03d.csv", index, j), 1);
+                    segment.add(String.format("%d/%03d.tmp", index, j), 1);
+                }
+                segment.finish();
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        FileList fileList = builder.build();
+
+        // merged in the order of the segments, and limited by total_file_count_limit
+        assertEquals(250, fileList.getTaskCount());
+        assertEquals("0/000.csv", fileList.get(0).get(0));
+        assertEquals("1/099.csv", fileList.get(199).get(0));
+        assertEquals("2/049.csv", fileList.get(249).get(0));
+        assertEquals(Optional.of("2/049.csv"), fileList.getLastPath(Optional.empty()));
+    }
+
+    @Test
+    public void testNameOrder() {
+        final List<String> names = Arrays.asList("a", "a/b", "a\u007F", "a\u00E9", "a\uD7FF", "a\uE000", "a\uFFFF", "a\uD83D\uDE00", "a\uDBFF\uDFFF");
+        for (int i = 0; i < names.size(); i++) {
+            for (int j = 0; j < names.size(); j++) {
+                final byte[] x = names.get(i).getBytes(StandardCharsets.UTF_8);
+                final byte[] y = names.get(j).getBytes(StandardCharsets.UTF_8);
+                assertEquals(Integer.signum(Integer.compare(i, j)), Integer.signum(FileList.compareNames(names.get(i), names.get(j))));
+                assertEquals(Integer.signum(Integer.compare(i, j)), Integer.signum(compareBytes(x, y)));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        FileList fileList = new FileList.Builder().pathMatchPattern(".*").build();
+        assertEquals(0, fileList.getTaskCount());
+        assertEquals(Optional.of("prev"), fileList.getLastPath(Optional.of("prev")));
+        assertTrue(fileList.getAllFiles().isEmpty());
+
+        // segments of a concurrent listing which found nothing
+        final FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*");
+        builder.segment(0);
+        builder.segment(1);
+        assertTrue(builder.build().getAllFiles().isEmpty());
+    }
+
+    @Test
+    public void testJsonRoundTrip() throws Exception {
+        FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*").minTaskSize(1L << 40);
+        for (int i = 0; i < 1000; i++) {
+            builder.add(String.format("path/to/file_%04d.csv", i), (long) i << 32);
+        }
+        FileList expected = builder.build();
+
+        ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+        FileList actual = mapper.readValue(mapper.writeValueAsString(expected), FileList.class);
+
+        assertEquals(expected.getTaskCount(), actual.getTaskCount());
+        for (int i = 0; i < expected.getTaskCount(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+        assertEquals(Optional.of("path/to/file_0999.csv"), actual.getLastPath(Optional.empty()));
+        assertFalse(actual.hasGenerations());
+    }
+
+    @Test
+    public void testGenerationsRoundTrip() throws Exception {
+        FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*").minTaskSize(0).checksums(true).generations(true);
+        builder.add("a.csv", 10, 123, 1760000000000001L);
+        builder.add("b.csv", 20, 456, 1760000000000002L);
+        FileList expected = builder.build();
+
+        ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+        FileList actual = mapper.readValue(mapper.writeValueAsString(expected), FileList.class);
+
+        assertTrue(actual.hasChecksums());
+        assertEquals(456, actual.getChecksum(1));
+        assertTrue(actual.hasGenerations());
+        assertEquals(1760000000000001L, actual.getGeneration(0));
+        assertEquals(1760000000000002L, actual.getGeneration(1));
+    }
+
+    // the order of GCS, in which the bytes are unsigned
+    private static int compareBytes(final byte[] x, final byte[] y) {
+        for (int i = 0; i < Math.min(x.length, y.length); i++) {
+            if (x[i] != y[i]) {
+                return (x[i] & 0xFF) - (y[i] & 0xFF);
+            }
+        }
+        return x.length - y.length;
+    }
+}
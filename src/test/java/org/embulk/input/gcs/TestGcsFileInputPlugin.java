@@ -276,6 +276,7 @@ public class TestGcsFileInputPlugin {
         );
 
         PluginTask task = CONFIG_MAPPER.map(config, PluginTask.class);
+        task.setSampling(false);
         ConfigDiff configDiff = plugin.transaction(config, (taskSource, taskCount) -> {
             assertEquals(2, taskCount);
             return emptyTaskReports(taskCount);
@@ -295,6 +296,7 @@ public class TestGcsFileInputPlugin {
 
         ConfigSource configWithPattern = config.deepCopy().set("path_match_pattern", "1");
         PluginTask task = CONFIG_MAPPER.map(configWithPattern, PluginTask.class);
+        task.setSampling(false);
         ConfigDiff configDiff = plugin.transaction(configWithPattern, (taskSource, taskCount) -> {
             assertEquals(1, taskCount);
             return emptyTaskReports(taskCount);
@@ -320,6 +322,7 @@ public class TestGcsFileInputPlugin {
         PluginTask task = CONFIG_MAPPER.map(config
                 .set("bucket", "non-exists-bucket")
                 .set("path_prefix", "prefix"), PluginTask.class);
+        task.setSampling(false);
         plugin.transaction(config, new Control());
 
         // after refactoring, GcsFileInput#listFiles() won't accept initialized client
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.util.Optional;
 import org.embulk.test.EmbulkTestRuntime;
 import org.embulk.util.file.ResumableInputStream;
 import org.junit.Rule;
@@ -112,6 +113,24 @@ public class TestInputStreamReopener {
         }
     }
 
+    @Test
+    public void testResumeSample() throws IOException {
+        final Storage client = mockStorage();
+        final SingleFileProvider.InputStreamReopener reopener = new SingleFileProvider.InputStreamReopener(
+                client, "any_bucket", "any_file", Optional.empty(), AdaptiveChunkSize.fixed(1024), 100);
+        final byte[] buf = new byte[30];
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final ResumableInputStream ris = new ResumableInputStream(reopener)) {
+            int len;
+            while ((len = ris.read(buf)) != -1) {
+                out.write(buf, 0, len);
+            }
+        }
+        // resumed within the sample, and stopped at its end
+        final String expected = Files.asCharSource(new File(SAMPLE_PATH), Charsets.UTF_8).read();
+        assertEquals(expected.substring(0, 100), out.toString("UTF-8"));
+    }
+
     private Storage mockStorage() {
         Blob blob = Mockito.mock(Blob.class);
         // mock Storage to return ReadChannel
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class TestIoExecutors {
+    @Test
+    public void testBoundedParallelism() throws InterruptedException, ExecutionException {
+        final ExecutorService executor = IoExecutors.newExecutor("test-io", 4);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(5);
+                    running.decrementAndGet();
+                    return Thread.currentThread().getName();
+                }));
+            }
+            for (Future<String> future : futures) {
+                assertTrue(future.get().startsWith("test-io-"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= 4);
+        assertEquals(0, running.get());
+    }
+
+    @Test
+    public void testVirtualThreadsOnJava21() throws Exception {
+        // set by the testMultiRelease tasks, which run the tests against the multi-release jar
+        assumeTrue(Integer.getInteger("org.embulk.input.gcs.multiReleaseVersion", 8) >= 21);
+        final ExecutorService executor = IoExecutors.newExecutor("test-io", 4);
+        try {
+            // Thread#isVirtual is not in Java 8
+            final Future<Object> virtual = executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+            assertEquals(Boolean.TRUE, virtual.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestListingCheckpoint {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+    private ListingCheckpoint.Task task;
+
+    @Before
+    public void createTask() {
+        file = folder.getRoot().toPath().resolve("listing.checkpoint");
+        task = new ListingCheckpoint.Task() {
+            @Override
+            public Optional<String> getListingCheckpointFile() {
+                return Optional.of(file.toString());
+            }
+        };
+    }
+
+    @Test
+    public void testResumesFromLastPage() {
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, "", "my-bucket/in/")) {
+            checkpoint.savePage(Arrays.asList("in/a", "in/b"), Arrays.asList(1L, 2L), Arrays.asList(11, 12), "token-1");
+            checkpoint.savePage(Arrays.asList("in/c"), Arrays.asList(3L), Arrays.asList(13), "token-2");
+        }
+        // interrupted before the next page
+
+        final FileList.Builder builder = newBuilder();
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, "", "my-bucket/in/")) {
+            assertEquals(Optional.of("token-2"), checkpoint.restore(builder));
+        }
+        final FileList files = builder.build();
+        assertEquals(Arrays.asList("in/a", "in/b", "in/c"), files.getAllFiles());
+        assertEquals(6, files.getTotalSize());
+        assertEquals(13, files.getChecksum(2));
+    }
+
+    @Test
+    public void testIgnoresStaleCheckpoint() {
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, "", "my-bucket/in/ after in/a")) {
+            checkpoint.savePage(Arrays.asList("in/b"), Arrays.asList(1L), Arrays.asList(11), "token-1");
+        }
+
+        // the listing after another last_path
+        final FileList.Builder builder = newBuilder();
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, "", "my-bucket/in/ after in/b")) {
+            assertEquals(Optional.empty(), checkpoint.restore(builder));
+            // written from the beginning for this listing
+            checkpoint.savePage(Arrays.asList("in/c"), Arrays.asList(1L), Arrays.asList(12), "");
+        }
+        assertEquals(0, builder.size());
+
+        final FileList.Builder next = newBuilder();
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, "", "my-bucket/in/ after in/b")) {
+            assertEquals(Optional.of(""), checkpoint.restore(next));
+        }
+        assertEquals(Collections.singletonList("in/c"), next.build().getAllFiles());
+    }
+
+    @Test
+    public void testRetriedPageListedOnce() throws IOException {
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, "", "my-bucket/in/")) {
+            checkpoint.savePage(Arrays.asList("in/a", "in/b"), Arrays.asList(1L, 2L), Arrays.asList(11, 12), "token-1");
+        }
+        // interrupted in the middle of writing the second page, whose objects are not followed by its page token
+        Files.write(file, "f\t3\t13\tin/c\nf\t4\t14\tin/".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        final FileList.Builder builder = newBuilder();
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, "", "my-bucket/in/")) {
+            assertEquals(Optional.of("token-1"), checkpoint.restore(builder));
+            // the second page is listed again from token-1
+            checkpoint.savePage(Arrays.asList("in/c", "in/d"), Arrays.asList(3L, 4L), Arrays.asList(13, 14), "");
+        }
+        assertEquals(Arrays.asList("in/a", "in/b"), builder.build().getAllFiles());
+
+        // neither duplicated nor skipped after another interruption
+        final FileList.Builder next = newBuilder();
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, "", "my-bucket/in/")) {
+            assertEquals(Optional.of(""), checkpoint.restore(next));
+        }
+        final FileList files = next.build();
+        assertEquals(Arrays.asList("in/a", "in/b", "in/c", "in/d"), files.getAllFiles());
+        assertEquals(14, files.getChecksum(3));
+    }
+
+    @Test
+    public void testCompleteRemovesCheckpoint() {
+        try (final ListingCheckpoint checkpoint = ListingCheckpoint.of(task, "", "my-bucket/in/")) {
+            checkpoint.savePage(Arrays.asList("in/a"), Arrays.asList(1L), Arrays.asList(11), "");
+            assertTrue(Files.exists(file));
+            checkpoint.complete();
+        }
+        assertFalse(Files.exists(file));
+        assertEquals(Optional.empty(), ListingCheckpoint.of(task, "", "my-bucket/in/").restore(newBuilder()));
+    }
+
+    private static FileList.Builder newBuilder() {
+        return new FileList.Builder().pathMatchPattern(".*").checksums(true);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import javax.management.ObjectName;
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+public class TestMemoryGovernor {
+    @Test
+    public void testReserveWithinLimit() {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        assertTrue(governor.tryReserve(60));
+        assertTrue(governor.tryReserve(40));
+        assertFalse(governor.tryReserve(1));
+        assertEquals(100, governor.getUsed());
+        assertEquals(1, governor.getFallbacks());
+
+        governor.release(60);
+        assertEquals(40, governor.getUsed());
+        assertTrue(governor.tryReserve(50));
+        assertEquals(90, governor.getUsed());
+        assertEquals(100, governor.getPeak());
+    }
+
+    @Test
+    public void testLimitAppliedOnce() {
+        MemoryGovernor governor = new MemoryGovernor(100);
+        // by a task without a transaction in the JVM
+        governor.applyLimitIfUnset(Optional.of(50L));
+        assertEquals(50, governor.getLimit());
+        // by another task
+        governor.applyLimitIfUnset(Optional.of(80L));
+        assertEquals(50, governor.getLimit());
+
+        // by the transaction of the next run without max_buffer_memory
+        governor.applyLimit(Optional.empty());
+        assertEquals(100, governor.getLimit());
+        governor.applyLimitIfUnset(Optional.of(80L));
+        assertEquals(100, governor.getLimit());
+    }
+
+    @Test
+    public void testGlobalIsRegistered() throws Exception {
+        MemoryGovernor.global();
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("org.embulk.input.gcs:type=MemoryGovernor")));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testNonPositiveLimit() {
+        new MemoryGovernor(0);
+    }
+}
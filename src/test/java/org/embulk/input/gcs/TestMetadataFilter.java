@@ -0,0 +1,94 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.storage.Blob;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestMetadataFilter {
+    @Test
+    public void testSize() {
+        final PluginTask task = task();
+        Mockito.doReturn(Optional.of(10L)).when(task).getMinSize();
+        Mockito.doReturn(Optional.of(100L)).when(task).getMaxSize();
+        final MetadataFilter filter = MetadataFilter.of(task);
+        assertFalse(filter.matches(blob(9, "2026-10-01T00:00:00Z", "text/csv")));
+        assertTrue(filter.matches(blob(10, "2026-10-01T00:00:00Z", "text/csv")));
+        assertTrue(filter.matches(blob(100, "2026-10-01T00:00:00Z", "text/csv")));
+        assertFalse(filter.matches(blob(101, "2026-10-01T00:00:00Z", "text/csv")));
+    }
+
+    @Test
+    public void testEmptyObjectsAreSkipped() {
+        assertFalse(MetadataFilter.of(task()).matches(blob(0, "2026-10-01T00:00:00Z", "text/csv")));
+    }
+
+    @Test
+    public void testUpdateTime() {
+        final PluginTask task = task();
+        Mockito.doReturn(Optional.of("2026-10-01T00:00:00Z")).when(task).getUpdatedAfter();
+        Mockito.doReturn(Optional.of("2026-10-02T09:00:00+09:00")).when(task).getUpdatedBefore();
+        final MetadataFilter filter = MetadataFilter.of(task);
+        assertFalse(filter.matches(blob(1, "2026-09-30T23:59:59Z", "text/csv")));
+        assertTrue(filter.matches(blob(1, "2026-10-01T00:00:00Z", "text/csv")));
+        assertFalse(filter.matches(blob(1, "2026-10-02T00:00:00Z", "text/csv")));
+    }
+
+    @Test
+    public void testContentTypes() {
+        final PluginTask task = task();
+        Mockito.doReturn(Arrays.asList("text/csv", "application/*")).when(task).getContentTypes();
+        final MetadataFilter filter = MetadataFilter.of(task);
+        assertTrue(filter.matches(blob(1, "2026-10-01T00:00:00Z", "text/csv; charset=utf-8")));
+        assertTrue(filter.matches(blob(1, "2026-10-01T00:00:00Z", "application/gzip")));
+        assertFalse(filter.matches(blob(1, "2026-10-01T00:00:00Z", "text/plain")));
+        assertFalse(filter.matches(blob(1, "2026-10-01T00:00:00Z", null)));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testInvalidUpdateTime() {
+        final PluginTask task = task();
+        Mockito.doReturn(Optional.of("2026-10-01")).when(task).getUpdatedAfter();
+        MetadataFilter.of(task);
+    }
+
+    private static PluginTask task() {
+        final PluginTask task = Mockito.mock(PluginTask.class);
+        Mockito.doReturn(Optional.empty()).when(task).getMinSize();
+        Mockito.doReturn(Optional.empty()).when(task).getMaxSize();
+        Mockito.doReturn(Optional.empty()).when(task).getUpdatedAfter();
+        Mockito.doReturn(Optional.empty()).when(task).getUpdatedBefore();
+        Mockito.doReturn(Collections.emptyList()).when(task).getContentTypes();
+        return task;
+    }
+
+    private static Blob blob(final long size, final String updated, final String contentType) {
+        final Blob blob = Mockito.mock(Blob.class);
+        Mockito.doReturn(size).when(blob).getSize();
+        Mockito.doReturn(Instant.parse(updated).toEpochMilli()).when(blob).getUpdateTime();
+        Mockito.doReturn(contentType).when(blob).getContentType();
+        return blob;
+    }
+}
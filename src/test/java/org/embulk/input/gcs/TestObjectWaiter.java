@@ -0,0 +1,144 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.embulk.input.gcs.GcsFileInputPlugin.CONFIG_MAPPER;
+import static org.embulk.input.gcs.GcsFileInputPlugin.CONFIG_MAPPER_FACTORY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.storage.Storage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.embulk.config.ConfigException;
+import org.embulk.config.ConfigSource;
+import org.embulk.test.EmbulkTestRuntime;
+import org.embulk.util.config.units.LocalFile;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestObjectWaiter {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testListsOnceWithoutTimeout() {
+        final AtomicInteger listings = new AtomicInteger();
+        final ObjectWaiter waiter = new ObjectWaiter(Optional.empty(), 10, 0, 1, 1);
+        assertFalse(waiter.isEnabled());
+        assertEquals(0, waiter.listFiles(arriving(listings, 0, 100)).getFileCount());
+        assertEquals(1, listings.get());
+    }
+
+    @Test
+    public void testWaitsForMinFiles() {
+        final AtomicInteger listings = new AtomicInteger();
+        final ObjectWaiter waiter = new ObjectWaiter(Optional.of(60000L), 3, 0, 1, 4);
+        // one object arrives every other listing
+        assertEquals(3, waiter.listFiles(arriving(listings, 2, 100)).getFileCount());
+        assertEquals(7, listings.get());
+    }
+
+    @Test
+    public void testWaitsForMinBytes() {
+        final AtomicInteger listings = new AtomicInteger();
+        final ObjectWaiter waiter = new ObjectWaiter(Optional.of(60000L), 1, 250, 1, 4);
+        assertEquals(3, waiter.listFiles(arriving(listings, 1, 100)).getFileCount());
+    }
+
+    @Test
+    public void testReturnsLastListingAtTimeout() {
+        final AtomicInteger listings = new AtomicInteger();
+        final ObjectWaiter waiter = new ObjectWaiter(Optional.of(100L), 1, 0, 10, 20);
+        assertEquals(0, waiter.listFiles(arriving(listings, 0, 100)).getFileCount());
+    }
+
+    @Test
+    public void testBuildsClientOnce() throws IOException {
+        try (final FakeGcsServer server = new FakeGcsServer("my-bucket")) {
+            server.put("in/0000.csv", "id\n1\n".getBytes(StandardCharsets.UTF_8), FakeGcsServer.Fault.NONE);
+            final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                    .set("bucket", "my-bucket")
+                    .set("path_prefix", "in/")
+                    .set("auth_method", "json_key")
+                    .set("json_keyfile", Optional.of(LocalFile.ofContent(server.newJsonKey())))
+                    .set("endpoint", server.getEndpoint())
+                    .set("wait_timeout_seconds", 1)
+                    .set("wait_min_files", 2)
+                    .set("wait_initial_interval_millis", 100)
+                    .set("wait_max_interval_millis", 100);
+            new GcsFileInputPlugin().transaction(config, (taskSource, taskCount) -> Collections.emptyList());
+            // listed again and again until the timeout, by the client built and checked once
+            assertTrue(server.getListRequests() > 3);
+            assertEquals(1, server.getTokenRequests());
+        }
+    }
+
+    @Test
+    public void testContinuesFromListedFiles() throws IOException {
+        try (final FakeGcsServer server = new FakeGcsServer("my-bucket")) {
+            for (int i = 0; i < 2 * FakeGcsServer.PAGE_SIZE; i++) {
+                server.put(String.format("in/%04d.csv", i), "id\n1\n".getBytes(StandardCharsets.UTF_8), FakeGcsServer.Fault.NONE);
+            }
+            final PluginTask task = CONFIG_MAPPER.map(CONFIG_MAPPER_FACTORY.newConfigSource()
+                    .set("bucket", "my-bucket")
+                    .set("path_prefix", "in/")
+                    .set("auth_method", "json_key")
+                    .set("json_keyfile", Optional.of(LocalFile.ofContent(server.newJsonKey())))
+                    .set("endpoint", server.getEndpoint()), PluginTask.class);
+            task.setSampling(false);
+            final Storage client = AuthUtils.newUncheckedClient(task);
+            final FileList first = GcsFileInput.listFiles(task, client, Optional.empty());
+            assertEquals(2 * FakeGcsServer.PAGE_SIZE, first.getFileCount());
+            assertEquals(2, server.getListRequests());
+
+            server.put("in/1000.csv", "id\n1\n".getBytes(StandardCharsets.UTF_8), FakeGcsServer.Fault.NONE);
+            final FileList second = GcsFileInput.listFiles(task, client, Optional.of(first));
+            // only the new object is listed, by a single page after the listed ones
+            assertEquals(3, server.getListRequests());
+            assertEquals(2 * FakeGcsServer.PAGE_SIZE + 1, second.getFileCount());
+            assertEquals(first.getAllFiles(), second.getAllFiles().subList(0, first.getFileCount()));
+            assertEquals(Arrays.asList("in/1000.csv"), second.getAllFiles().subList(first.getFileCount(), second.getFileCount()));
+            assertEquals(Optional.of("in/1000.csv"), second.getLastPath(Optional.empty()));
+        }
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testInvalidInterval() {
+        new ObjectWaiter(Optional.of(1L), 1, 0, 10, 1);
+    }
+
+    // lists one more object of {@code size} bytes every {@code every} listings, or none if it is 0
+    private static Function<Optional<FileList>, FileList> arriving(final AtomicInteger listings, final int every, final long size) {
+        return listed -> {
+            final int count = every == 0 ? 0 : listings.getAndIncrement() / every;
+            if (every == 0) {
+                listings.incrementAndGet();
+            }
+            final FileList.Builder builder = new FileList.Builder().pathMatchPattern(".*");
+            for (int i = 0; i < count; i++) {
+                builder.add(String.format("in/%04d.csv", i), size);
+            }
+            return builder.build();
+        };
+    }
+}
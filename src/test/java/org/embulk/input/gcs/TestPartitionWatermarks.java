@@ -0,0 +1,119 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.embulk.input.gcs.GcsFileInputPlugin.CONFIG_MAPPER;
+import static org.embulk.input.gcs.GcsFileInputPlugin.CONFIG_MAPPER_FACTORY;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import org.embulk.config.ConfigDiff;
+import org.embulk.config.ConfigSource;
+import org.embulk.test.EmbulkTestRuntime;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestPartitionWatermarks {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testPartitionByDepth() {
+        final PartitionWatermarks partitions = new PartitionWatermarks("events/", 2, Optional.empty(), 24, Collections.emptyMap());
+        assertEquals(Optional.of("events/dt=2026-10-16/hour=07/"), partitions.partitionOf("events/dt=2026-10-16/hour=07/00.csv"));
+        assertEquals(Optional.empty(), partitions.partitionOf("events/dt=2026-10-16/_SUCCESS"));
+    }
+
+    @Test
+    public void testPartitionByPattern() {
+        final PartitionWatermarks partitions = new PartitionWatermarks("events/", 0,
+                Optional.of(Pattern.compile("events/dt=[^/]+/")), 24, Collections.emptyMap());
+        assertEquals(Optional.of("events/dt=2026-10-16/"), partitions.partitionOf("events/dt=2026-10-16/hour=07/00.csv"));
+        assertEquals(Optional.empty(), partitions.partitionOf("events/manifest.json"));
+    }
+
+    @Test
+    public void testListsOpenPartitionsFromTheirWatermarks() {
+        final Map<String, String> watermarks = new TreeMap<>();
+        watermarks.put("events/dt=2026-10-16/hour=06/", "events/dt=2026-10-16/hour=06/03.csv");
+        watermarks.put("events/dt=2026-10-16/hour=07/", "events/dt=2026-10-16/hour=07/01.csv");
+        final PartitionWatermarks partitions = new PartitionWatermarks("events/", 2, Optional.empty(), 24, watermarks);
+
+        final List<PartitionWatermarks.Listing> listings = partitions.getListings(Optional.of("events/dt=2026-10-16/hour=07/01.csv"));
+        assertEquals(2, listings.size());
+        assertEquals("events/dt=2026-10-16/hour=06/", listings.get(0).getPrefix());
+        assertEquals(Optional.of("events/dt=2026-10-16/hour=06/03.csv"), listings.get(0).getLastPath());
+        // the latest partition and the newer ones
+        assertEquals("events/", listings.get(1).getPrefix());
+        assertEquals(Optional.of("events/dt=2026-10-16/hour=07/01.csv"), listings.get(1).getLastPath());
+    }
+
+    @Test
+    public void testFirstRunListsFromLastPath() {
+        final PartitionWatermarks partitions = new PartitionWatermarks("events/", 2, Optional.empty(), 24, Collections.emptyMap());
+        final List<PartitionWatermarks.Listing> listings = partitions.getListings(Optional.of("events/dt=2026-10-15/hour=23/09.csv"));
+        assertEquals(1, listings.size());
+        assertEquals("events/", listings.get(0).getPrefix());
+        assertEquals(Optional.of("events/dt=2026-10-15/hour=23/09.csv"), listings.get(0).getLastPath());
+    }
+
+    @Test
+    public void testDropsPartitionsBeyondRetention() {
+        final Map<String, String> watermarks = new TreeMap<>();
+        watermarks.put("events/dt=2026-10-16/hour=05/", "events/dt=2026-10-16/hour=05/09.csv");
+        watermarks.put("events/dt=2026-10-16/hour=06/", "events/dt=2026-10-16/hour=06/03.csv");
+        final PartitionWatermarks partitions = new PartitionWatermarks("events/", 2, Optional.empty(), 2, watermarks);
+
+        final Map<String, String> next = partitions.next(Arrays.asList(
+                "events/dt=2026-10-16/hour=06/04.csv", "events/dt=2026-10-16/hour=07/00.csv", "events/dt=2026-10-16/_SUCCESS"));
+        final Map<String, String> expected = new TreeMap<>();
+        expected.put("events/dt=2026-10-16/hour=06/", "events/dt=2026-10-16/hour=06/04.csv");
+        expected.put("events/dt=2026-10-16/hour=07/", "events/dt=2026-10-16/hour=07/00.csv");
+        assertEquals(expected, next);
+    }
+
+    @Test
+    public void testResumeWithoutFiles() {
+        final Map<String, String> watermarks = new TreeMap<>();
+        watermarks.put("events/dt=2026-10-16/hour=07/", "events/dt=2026-10-16/hour=07/01.csv");
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("bucket", "my-bucket")
+                .set("path_prefix", "events/")
+                .set("last_path", "events/dt=2026-10-16/hour=07/01.csv")
+                .set("partition_depth", 2)
+                .set("partition_watermarks", watermarks);
+        final PluginTask task = CONFIG_MAPPER.map(config, PluginTask.class);
+        // the partitions are listed concurrently, and none of them had new objects
+        final FileList.Builder builder = new FileList.Builder(config);
+        builder.segment(0);
+        builder.segment(1);
+        task.setFiles(builder.build());
+        task.setSharedAccessToken(Optional.empty());
+        task.setSharedAccessTokenExpiration(Optional.empty());
+        task.setWorkQueueId(Optional.empty());
+        task.setSampling(false);
+
+        final ConfigDiff configDiff = new GcsFileInputPlugin().resume(task.toTaskSource(), 0, (taskSource, taskCount) -> Collections.emptyList());
+        assertEquals("events/dt=2026-10-16/hour=07/01.csv", configDiff.get(String.class, "last_path"));
+        assertEquals(watermarks, CONFIG_MAPPER.map(config.merge(configDiff), PluginTask.class).getPartitionWatermarks());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+public class TestPathFilter {
+    @Test
+    public void testSameAsRegexp() {
+        final List<String> regexps = Arrays.asList("\\.csv$", ".csv$", "^logs/2026", "^logs/a+b", "^a\\.b.*c\\.d$", "/data1/|/data2/", "(?i)abc$", "^abc$", ".*");
+        final List<String> paths = Arrays.asList("a.csv", "acsv", "logs/2026/a.csv", "logs/2025", "logs/ab", "logs/aab", "logs/b",
+                "a.b_c.d", "a.bc.d", "in/data2/a", "x/ABC", "abc", "");
+        for (String regexp : regexps) {
+            final PathFilter filter = PathFilter.of(regexp);
+            for (String path : paths) {
+                assertEquals(regexp + " " + path, Pattern.compile(regexp).matcher(path).find(), filter.matches(path));
+            }
+        }
+    }
+
+    @Test
+    public void testIncludesAndExcludes() {
+        final PathFilter filter = PathFilter.of(".*", task(Arrays.asList("logs/2026-10-*/*.csv", "logs/2026-1{0,1}-01/**"), Arrays.asList("\\.tmp$")));
+        assertTrue(filter.matches("logs/2026-10-17/a.csv"));
+        assertFalse(filter.matches("logs/2026-10-17/x/a.csv"));
+        assertTrue(filter.matches("logs/2026-11-01/x/a.json"));
+        assertFalse(filter.matches("logs/2026-12-01/a.json"));
+        assertFalse(filter.matches("logs/2026-10-01/a.tmp"));
+    }
+
+    @Test
+    public void testNarrowPrefix() {
+        final PathFilter filter = PathFilter.of(".*", task(Arrays.asList("logs/2026-10-*/*.csv", "logs/2026-11-01/**"), Collections.emptyList()));
+        assertEquals("logs/2026-1", filter.narrowPrefix("logs/"));
+        assertEquals("logs/2026-10-17/", filter.narrowPrefix("logs/2026-10-17/"));
+        assertEquals("logs/2026-10", PathFilter.of("^logs/2026-10").narrowPrefix(""));
+        assertEquals("logs/", PathFilter.of("\\.csv$").narrowPrefix("logs/"));
+    }
+
+    @Test
+    public void testShards() {
+        final List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            paths.add(String.format("logs/2026-10-17/%04d.csv", i));
+        }
+        final List<String> sharded = new ArrayList<>();
+        for (int shard = 0; shard < 3; shard++) {
+            final PathFilter filter = PathFilter.of(".*", task(Collections.emptyList(), Collections.emptyList(), shard, 3));
+            for (String path : paths) {
+                if (filter.matches(path)) {
+                    sharded.add(path);
+                }
+            }
+        }
+        // each path is read by exactly one shard
+        Collections.sort(sharded);
+        assertEquals(paths, sharded);
+        // the shards must not change across processes and versions
+        assertEquals(1, PathFilter.getShard("hello", 3));
+        assertEquals(2, PathFilter.getShard("logs/2026-10-17/0000.csv", 3));
+    }
+
+    @Test
+    public void testMayMatchAfter() {
+        final PathFilter filter = PathFilter.of("^logs/2026-10", task(Collections.emptyList(), Collections.emptyList(), 0, 1,
+                Optional.of("logs/2026-10-17/z.csv")));
+        assertTrue(filter.mayMatchAfter("logs/2026-09-30/a.csv"));
+        assertTrue(filter.mayMatchAfter("logs/2026-10-17/a.csv"));
+        assertFalse(filter.matches("logs/2026-10-18/a.csv"));
+        // after end_path
+        assertFalse(filter.mayMatchAfter("logs/2026-10-17/z.csv"));
+        // after the literal prefix
+        assertFalse(PathFilter.of("^logs/2026-10").mayMatchAfter("logs/2026-11-01/a.csv"));
+        assertTrue(PathFilter.of("\\.csv$").mayMatchAfter("logs/2026-11-01/a.csv"));
+
+        final PathFilter includes = PathFilter.of(".*", task(Arrays.asList("logs/2026-10-*/*.csv", "logs/2026-11-01/**"), Collections.emptyList()));
+        assertTrue(includes.mayMatchAfter("logs/2026-10-31/a.csv"));
+        assertTrue(includes.mayMatchAfter("logs/2026-11-01/a.csv"));
+        assertFalse(includes.mayMatchAfter("logs/2026-11-02/a.csv"));
+    }
+
+    @Test
+    public void testEndPathInOrderOfUtf8() {
+        // GCS sorts U+1F600 out of the BMP after U+E000, although its UTF-16 surrogates are sorted before it
+        final PathFilter filter = PathFilter.of(".*", task(Collections.emptyList(), Collections.emptyList(), 0, 1, Optional.of("logs/\uE000.csv")));
+        assertTrue(filter.matches("logs/\uE000.csv"));
+        assertFalse(filter.matches("logs/\uD83D\uDE00.csv"));
+        assertFalse(filter.mayMatchAfter("logs/\uD83D\uDE00.csv"));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testInvalidShard() {
+        PathFilter.of(".*", task(Collections.emptyList(), Collections.emptyList(), 3, 3));
+    }
+
+    private static PathFilter.Task task(final List<String> includeGlobs, final List<String> excludePatterns) {
+        return task(includeGlobs, excludePatterns, 0, 1);
+    }
+
+    private static PathFilter.Task task(final List<String> includeGlobs, final List<String> excludePatterns, final int shardIndex, final int shardCount) {
+        return task(includeGlobs, excludePatterns, shardIndex, shardCount, Optional.empty());
+    }
+
+    private static PathFilter.Task task(final List<String> includeGlobs, final List<String> excludePatterns, final int shardIndex, final int shardCount,
+                                        final Optional<String> endPath) {
+        return new PathFilter.Task() {
+            @Override
+            public List<String> getIncludeGlobs() {
+                return includeGlobs;
+            }
+
+            @Override
+            public List<String> getIncludePatterns() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public List<String> getExcludeGlobs() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public List<String> getExcludePatterns() {
+                return excludePatterns;
+            }
+
+            @Override
+            public int getShardIndex() {
+                return shardIndex;
+            }
+
+            @Override
+            public int getShardCount() {
+                return shardCount;
+            }
+
+            @Override
+            public Optional<String> getEndPath() {
+                return endPath;
+            }
+        };
+    }
+}
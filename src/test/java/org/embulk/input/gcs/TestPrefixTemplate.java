@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import org.embulk.config.ConfigException;
+import org.junit.Test;
+
+public class TestPrefixTemplate {
+    @Test
+    public void testExpandDays() {
+        final PrefixTemplate template = new PrefixTemplate("logs/%Y/%m/%d/",
+                LocalDateTime.of(2026, 9, 29, 12, 0), LocalDateTime.of(2026, 10, 2, 0, 0));
+        assertEquals(Arrays.asList("logs/2026/09/29/", "logs/2026/09/30/", "logs/2026/10/01/"), template.expand());
+    }
+
+    @Test
+    public void testExpandHoursWithLiteralPercent() {
+        final PrefixTemplate template = new PrefixTemplate("logs/100%%/dt=%Y-%m-%d/hour=%H/",
+                LocalDateTime.of(2026, 10, 16, 22, 30), LocalDateTime.of(2026, 10, 17, 1, 0));
+        assertEquals(Arrays.asList("logs/100%/dt=2026-10-16/hour=22/", "logs/100%/dt=2026-10-16/hour=23/", "logs/100%/dt=2026-10-17/hour=00/"),
+                template.expand());
+    }
+
+    @Test
+    public void testExpandMonths() {
+        final PrefixTemplate template = new PrefixTemplate("logs/%Y%m",
+                LocalDateTime.of(2026, 11, 15, 0, 0), LocalDateTime.of(2027, 2, 1, 0, 0));
+        assertEquals(Arrays.asList("logs/202611", "logs/202612", "logs/202701"), template.expand());
+    }
+
+    @Test
+    public void testTooManyPrefixes() {
+        assertEquals(PrefixTemplate.MAX_PREFIXES, new PrefixTemplate("logs/%Y%m%d%H%M/",
+                LocalDateTime.of(2026, 10, 1, 0, 0), LocalDateTime.of(2026, 10, 8, 0, 0)).expand().size());
+        try {
+            new PrefixTemplate("logs/%Y%m%d%H%M/", LocalDateTime.of(2026, 10, 1, 0, 0), LocalDateTime.of(2026, 10, 8, 0, 1)).expand();
+            fail("Should throw");
+        } catch (final ConfigException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnknownField() {
+        try {
+            new PrefixTemplate("logs/%y/", LocalDateTime.of(2026, 1, 1, 0, 0), LocalDateTime.of(2027, 1, 1, 0, 0));
+            fail("Should throw");
+        } catch (final ConfigException e) {
+            // expected
+        }
+    }
+}
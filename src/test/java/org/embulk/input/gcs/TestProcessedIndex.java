@@ -0,0 +1,128 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.embulk.input.gcs.GcsFileInputPlugin.CONFIG_MAPPER;
+import static org.embulk.input.gcs.GcsFileInputPlugin.CONFIG_MAPPER_FACTORY;
+import static org.embulk.input.gcs.GcsFileInputPlugin.TASK_MAPPER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.TreeSet;
+import org.embulk.config.ConfigDiff;
+import org.embulk.config.ConfigSource;
+import org.embulk.test.EmbulkTestRuntime;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TestProcessedIndex {
+    @Rule
+    public EmbulkTestRuntime runtime = new EmbulkTestRuntime();
+
+    @Test
+    public void testCatchesLateArrival() {
+        // the first run with the window starts from last_path
+        ProcessedIndex index = new ProcessedIndex(Optional.of("logs/0100.csv"), new TreeSet<>());
+        index = index.add(Arrays.asList("logs/0200.csv", "logs/0300.csv"), 3);
+        assertEquals(Optional.of("logs/0100.csv"), index.getBoundary());
+        assertTrue(index.contains("logs/0050.csv"));
+        assertTrue(index.contains("logs/0200.csv"));
+        // arrived after logs/0300.csv was read
+        assertFalse(index.contains("logs/0250.csv"));
+
+        index = index.add(Arrays.asList("logs/0250.csv", "logs/0400.csv"), 3);
+        assertEquals(3, index.size());
+        assertEquals(Optional.of("logs/0200.csv"), index.getBoundary());
+        assertTrue(index.contains("logs/0150.csv"));
+        assertTrue(index.contains("logs/0250.csv"));
+        assertFalse(index.contains("logs/0350.csv"));
+    }
+
+    @Test
+    public void testConfigRoundTrip() {
+        final TreeSet<String> names = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add(String.format("path/to/2026-10-18/file_%04d.csv", i));
+        }
+        names.add("テスト/ダミー.csv");
+        final ProcessedIndex expected = new ProcessedIndex(Optional.of("path/to/2026-10-17/file_9999.csv"), names);
+
+        final ObjectMapper mapper = new ObjectMapper().registerModule(new Jdk8Module());
+        final ProcessedIndex actual = mapper.convertValue(expected.toConfig(), ProcessedIndex.class);
+
+        assertEquals(expected.fingerprint(), actual.fingerprint());
+        assertEquals(1001, actual.size());
+        assertTrue(actual.contains("path/to/2026-10-18/file_0500.csv"));
+        assertTrue(actual.contains("テスト/ダミー.csv"));
+        assertFalse(actual.contains("path/to/2026-10-18/file_1000.csv"));
+        // front-coded, a few bytes per name
+        assertTrue(((String) expected.toConfig().get("names")).length() < 10000);
+    }
+
+    @Test
+    public void testTaskSourceRoundTrip() {
+        final TreeSet<String> names = new TreeSet<>();
+        for (int i = 0; i < 100; i++) {
+            names.add(String.format("logs/file_%04d.csv", i));
+        }
+        final ProcessedIndex expected = new ProcessedIndex(Optional.of("logs/file_0000.csv"), names);
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("bucket", "my-bucket")
+                .set("path_prefix", "logs/")
+                .set("late_arrival_window", 100)
+                .set("processed_index", expected.toConfig());
+        final PluginTask task = CONFIG_MAPPER.map(config, PluginTask.class);
+        task.setFiles(new FileList.Builder(config).build());
+
+        final ProcessedIndex actual = TASK_MAPPER.map(task.toTaskSource(), PluginTask.class).getProcessedIndex().get();
+        assertEquals(expected.fingerprint(), actual.fingerprint());
+        assertEquals(Optional.of("logs/file_0000.csv"), actual.getBoundary());
+        assertTrue(actual.contains("logs/file_0050.csv"));
+    }
+
+    @Test
+    public void testEmptyWithoutBoundary() {
+        final ProcessedIndex index = new ProcessedIndex(Optional.empty(), new TreeSet<>()).add(Arrays.asList("b", "a"), 1);
+        assertEquals(Optional.of("a"), index.getBoundary());
+        assertTrue(index.contains("a"));
+        assertTrue(index.contains("b"));
+        assertFalse(index.contains("c"));
+    }
+
+    @Test
+    public void testResumeWithoutFiles() {
+        final ConfigSource config = CONFIG_MAPPER_FACTORY.newConfigSource()
+                .set("bucket", "my-bucket")
+                .set("path_prefix", "logs/")
+                .set("last_path", "logs/0100.csv")
+                .set("late_arrival_window", 3);
+        final PluginTask task = CONFIG_MAPPER.map(config, PluginTask.class);
+        task.setFiles(new FileList.Builder(config).build());
+
+        final ConfigDiff configDiff = new GcsFileInputPlugin().resume(task.toTaskSource(), 0, (taskSource, taskCount) -> Collections.emptyList());
+        assertEquals("logs/0100.csv", configDiff.get(String.class, "last_path"));
+
+        final ProcessedIndex next = CONFIG_MAPPER.map(config.merge(configDiff), PluginTask.class).getProcessedIndex().get();
+        assertEquals(Optional.of("logs/0100.csv"), next.getBoundary());
+        assertEquals(0, next.size());
+    }
+}
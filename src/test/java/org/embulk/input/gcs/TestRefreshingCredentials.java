@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class TestRefreshingCredentials {
+    private static final URI STORAGE_URI = URI.create("https://storage.googleapis.com/");
+
+    private static class CountingCredentials extends GoogleCredentials {
+        private final AtomicInteger refreshed = new AtomicInteger();
+
+        @Override
+        public AccessToken refreshAccessToken() {
+            return new AccessToken("token-" + refreshed.incrementAndGet(), new Date(System.currentTimeMillis() + 3600 * 1000));
+        }
+    }
+
+    @Test
+    public void testInitialToken() throws Exception {
+        final CountingCredentials key = new CountingCredentials();
+        final AccessToken shared = new AccessToken("shared", new Date(System.currentTimeMillis() + 3600 * 1000));
+        final RefreshingCredentials credentials = RefreshingCredentials.of(UUID.randomUUID().toString(), () -> key, Optional.of(shared));
+
+        assertEquals(Collections.singletonList("Bearer shared"), credentials.getRequestMetadata(STORAGE_URI).get("Authorization"));
+        assertEquals(0, key.refreshed.get());
+    }
+
+    @Test
+    public void testRefreshExpiredToken() throws Exception {
+        final CountingCredentials key = new CountingCredentials();
+        final AccessToken expired = new AccessToken("expired", new Date(System.currentTimeMillis() - 1000));
+        final String id = UUID.randomUUID().toString();
+        final RefreshingCredentials credentials = RefreshingCredentials.of(id, () -> key, Optional.of(expired));
+
+        assertEquals(Collections.singletonList("Bearer token-1"), credentials.getRequestMetadata(STORAGE_URI).get("Authorization"));
+        assertEquals(Collections.singletonList("Bearer token-1"), credentials.getRequestMetadata(STORAGE_URI).get("Authorization"));
+        assertEquals(1, key.refreshed.get());
+    }
+
+    @Test
+    public void testSharedByKey() throws Exception {
+        final String id = UUID.randomUUID().toString();
+        final RefreshingCredentials first = RefreshingCredentials.of(id, CountingCredentials::new, Optional.empty());
+        final RefreshingCredentials second = RefreshingCredentials.of(id, CountingCredentials::new, Optional.empty());
+        assertSame(first, second);
+    }
+}
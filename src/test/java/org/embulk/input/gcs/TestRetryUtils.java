@@ -54,7 +54,7 @@ public class TestRetryUtils {
 
     @Before
     public void setUp() {
-        mock = new RetryUtils.DefaultRetryable<Object>() {
+        mock = new RetryUtils.DefaultRetryable<Object>("GET") {
             @Override
             public Object call() {
                 return null;
@@ -96,7 +96,7 @@ public class TestRetryUtils {
     @Test
     public void testWithRetryGiveUp() {
         final String expectMsg = "Will retry and give up";
-        mock = new RetryUtils.DefaultRetryable<Object>() {
+        mock = new RetryUtils.DefaultRetryable<Object>("GET") {
             @Override
             public Object call() {
                 throw new IllegalStateException(expectMsg);
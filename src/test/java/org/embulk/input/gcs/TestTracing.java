@@ -0,0 +1,43 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class TestTracing {
+    @Test
+    public void testRecordsWithoutRecording() {
+        // no recording enables the events, so nothing is committed on any version
+        Tracing.listPage("my-bucket", "logs/", 1000, 1_000_000L);
+        Tracing.open("logs/0001.csv", 1_000_000L);
+        Tracing.chunk("logs/0001.csv", 2 * 1024 * 1024, 1_000_000L, 2 * 1024 * 1024);
+        Tracing.reopen("logs/0001.csv", 1024, new IOException("Fake IOException"));
+        Tracing.retry("GET", new IOException("Fake IOException"), 1, 3, 500);
+    }
+
+    @Test
+    public void testLoadsVersionedClass() throws ClassNotFoundException {
+        // set by the testMultiRelease tasks, which run the tests against the multi-release jar
+        assumeTrue(Integer.getInteger("org.embulk.input.gcs.multiReleaseVersion", 8) >= 11);
+        // only the class under META-INF/versions/11 has the events of JDK Flight Recorder
+        final Class<?> event = Class.forName("org.embulk.input.gcs.Tracing$ListPageEvent");
+        assertEquals("jdk.jfr.Event", event.getSuperclass().getName());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2026 The Embulk project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.embulk.input.gcs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+
+public class TestWorkQueue {
+    @Test
+    public void testPollEachFileOnce() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (final WorkQueue queue = WorkQueue.register(1000)) {
+            assertSame(queue, WorkQueue.of(queue.getId()));
+
+            final List<Future<List<Integer>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    final List<Integer> taken = new ArrayList<>();
+                    int index;
+                    while ((index = WorkQueue.of(queue.getId()).poll()) >= 0) {
+                        taken.add(index);
+                    }
+                    return taken;
+                }));
+            }
+            final List<Integer> all = new ArrayList<>();
+            for (Future<List<Integer>> future : futures) {
+                all.addAll(future.get());
+            }
+            Collections.sort(all);
+            assertEquals(1000, all.size());
+            for (int i = 0; i < all.size(); i++) {
+                assertEquals(i, (int) all.get(i));
+            }
+            assertEquals(-1, queue.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedQueue() {
+        final WorkQueue queue = WorkQueue.register(1);
+        queue.close();
+        WorkQueue.of(queue.getId());
+    }
+}